@@ -18,6 +18,12 @@ function [Ps, Pn, As, An, ssa_results] = ssa(X, d, varargin)
 %                         objective function value is returned). Default: 5
 %    equal_epochs        Number of equally sized epochs. equal_epochs=0 means, that
 %                         the number of epochs is chosen by a heuristic. Default: 0 (chose by heuristic)
+%    pca_components      Number of principal components onto which the data is
+%                         projected before SSA; Ps and Pn together then have
+%                         only this many rows. Default: 0 (no projection)
+%    pca_variance        Fraction of the variance which the principal components
+%                         have to explain (the smaller number of components of
+%                         both options is used). Default: 0 (no projection)
 %    use_mean            Set this to false to ignore changes in the mean
 %                         (for example if your dataset ensures you that no changes
 %                         in the mean occur). Default: true
@@ -27,6 +33,67 @@ function [Ps, Pn, As, An, ssa_results] = ssa(X, d, varargin)
 %                         Default: 'colt'
 %    random_seed         Random seed, to make runs repeatable.
 %                         Default: 0 (which means: no fixed random seed)
+%    threads             Number of threads on which the restarts are run in
+%                         parallel. The results do not depend on the number
+%                         of threads. Default: 1
+%    pipeline_phases     Set this to true to start the random restarts for the
+%                         n-sources while the s-sources are still optimized
+%                         (only useful with threads > 1). The results are
+%                         the same. Default: false
+%    epoch_threads       Number of threads on which the objective function
+%                         is evaluated for blocks of epochs in parallel.
+%                         Useful for many epochs. Default: 1
+%    line_search_threads Number of threads on which the line search
+%                         evaluates several step sizes at once (for 'cg'
+%                         and 'lbfgs'). Default: 1
+%    optimizer           optimization algorithm. Has to be 'cg' (conjugate
+%                         gradient), 'lbfgs', 'trust_region' (Newton method
+%                         with exact Hessian), 'stochastic' (Adam on
+%                         mini-batches of epochs, then 'cg' on all epochs;
+%                         for very many epochs) or 'givens' (sweeps of plane
+%                         rotations; for large n and small d). Default: 'cg'
+%    batch_size          Number of epochs per mini-batch of the 'stochastic'
+%                         optimizer. Default: 32
+%    learning_rate       Initial learning rate of the 'stochastic' optimizer
+%                         (rotation angle per step). Default: 0.02
+%    learning_rate_decay The learning rate in pass p = 0, 1, ... is
+%                         learning_rate / (1 + learning_rate_decay * p).
+%                         Default: 0.5
+%    passes              Number of passes over all epochs of the 'stochastic'
+%                         optimizer before 'cg' takes over. Default: 5
+%    max_iterations      Maximum number of iterations per restart and phase.
+%                         Default: 0 (no limit)
+%    time_limit          Time limit for the optimization in seconds; the time
+%                         is split across the restarts, and the best result
+%                         found in time is returned. Default: 0 (no limit)
+%    single_precision    Set this to true to store the epoch covariance matrices
+%                         in single precision, which halves their memory. The
+%                         result is refined in double precision at the end.
+%                         Default: false
+%    retraction          map from antisymmetric matrices to rotations. Has to be
+%                         'expm' or 'cayley' (faster for many dimensions).
+%                         Default: 'expm'
+%    round_iterations    If positive, all restarts are advanced by this number
+%                         of iterations per round, and the worst restarts are
+%                         dropped after every round (successive halving); the
+%                         last one is run to convergence. Default: 0 (off)
+%    elimination_rate    Fraction of the restarts which is dropped after every
+%                         round. Default: 0.5
+%    candidates          If positive, this number of random initializations
+%                         is screened with one evaluation of the objective
+%                         function each, and the random restarts start from
+%                         the best ones which are not too close to each
+%                         other. Default: 0 (off)
+%    warm_start          Result of a previous run, from which the first restart
+%                         starts: either the ssa_results structure (or any
+%                         structure with the fields Ps and optionally Pn) or
+%                         the name of a .mat file written by the toolbox. The
+%                         other restarts are initialized randomly, so with
+%                         reps=1 no random initializations are used.
+%                         Default: [] (random initializations only)
+%    geodesic_line_search  Set this to true to decompose the search direction
+%                         once per iteration instead of computing a matrix
+%                         exponential for every line search step. Default: false
 %    quiet               Set this to true in order to suppress all output.
 %                         Default: false
 %    ignore_determinacy  Set this to true, if the determinacy bounds should
@@ -89,10 +156,30 @@ opt = propertylist2struct(varargin{:});
 opt = set_defaults(opt, ...
 						'reps', 5, ...
 					    'equal_epochs', 0, ...
+						'pca_components', 0, ...
+						'pca_variance', 0, ...
 						'use_mean', true, ...
 						'use_covariance', true, ...
 						'matrix_library', 'colt', ...
 						'random_seed', 0,  ...
+						'threads', 1, ...
+						'epoch_threads', 1, ...
+						'line_search_threads', 1, ...
+						'pipeline_phases', false, ...
+						'optimizer', 'cg', ...
+						'batch_size', 32, ...
+						'learning_rate', 0.02, ...
+						'learning_rate_decay', 0.5, ...
+						'passes', 5, ...
+						'max_iterations', 0, ...
+						'time_limit', 0, ...
+						'single_precision', false, ...
+						'retraction', 'expm', ...
+						'geodesic_line_search', false, ...
+						'round_iterations', 0, ...
+						'elimination_rate', 0.5, ...
+						'candidates', 0, ...
+						'warm_start', [], ...
 					    'quiet', false, ...
                         'ignore_determinacy', false, ...
                         'means', [], ...
@@ -218,6 +305,57 @@ end
 % set SSA parameters
 ssamain.parameters.setNumberOfStationarySources(d);
 ssamain.parameters.setNumberOfRestarts(opt.reps);
+ssamain.data.setNumberOfPrincipalComponents(opt.pca_components);
+ssamain.data.setRetainedVariance(opt.pca_variance);
+ssamain.parameters.setNumberOfThreads(opt.threads);
+ssamain.parameters.setNumberOfEpochThreads(opt.epoch_threads);
+ssamain.parameters.setNumberOfLineSearchThreads(opt.line_search_threads);
+ssamain.parameters.setPipelinePhases(opt.pipeline_phases);
+ssamain.parameters.setGeodesicLineSearch(opt.geodesic_line_search);
+ssamain.parameters.setRoundIterations(opt.round_iterations);
+ssamain.parameters.setEliminationRate(opt.elimination_rate);
+ssamain.parameters.setNumberOfCandidates(opt.candidates);
+ssamain.parameters.setBatchSize(opt.batch_size);
+ssamain.parameters.setLearningRate(opt.learning_rate);
+ssamain.parameters.setLearningRateDecay(opt.learning_rate_decay);
+ssamain.parameters.setNumberOfPasses(opt.passes);
+ssamain.parameters.setMaxIterations(opt.max_iterations);
+ssamain.parameters.setTimeLimit(round(1000*opt.time_limit));
+ssamain.parameters.setSinglePrecision(opt.single_precision);
+if strcmp(opt.optimizer, 'cg')
+    ssamain.parameters.setOptimizer(ssatoolbox.SSAParameters.OPTIMIZER_CG);
+elseif strcmp(opt.optimizer, 'lbfgs')
+    ssamain.parameters.setOptimizer(ssatoolbox.SSAParameters.OPTIMIZER_LBFGS);
+elseif strcmp(opt.optimizer, 'trust_region')
+    ssamain.parameters.setOptimizer(ssatoolbox.SSAParameters.OPTIMIZER_TRUST_REGION);
+elseif strcmp(opt.optimizer, 'stochastic')
+    ssamain.parameters.setOptimizer(ssatoolbox.SSAParameters.OPTIMIZER_STOCHASTIC);
+elseif strcmp(opt.optimizer, 'givens')
+    ssamain.parameters.setOptimizer(ssatoolbox.SSAParameters.OPTIMIZER_GIVENS);
+else
+    error('Error: Unknown optimizer %s.\n', opt.optimizer);
+end
+if strcmp(opt.retraction, 'expm')
+    ssamain.parameters.setRetraction(ssatoolbox.SSAParameters.RETRACTION_EXPM);
+elseif strcmp(opt.retraction, 'cayley')
+    ssamain.parameters.setRetraction(ssatoolbox.SSAParameters.RETRACTION_CAYLEY);
+else
+    error('Error: Unknown retraction %s.\n', opt.retraction);
+end
+if ischar(opt.warm_start)
+    ssamain.loadWarmStart(java.io.File(opt.warm_start));
+    if isempty(ssamain.parameters.getWarmStartPs)
+        return;
+    end
+elseif isstruct(opt.warm_start)
+    if isfield(opt.warm_start, 'Pn')
+        ssamain.parameters.setWarmStart(ssatoolbox.SSAMatrix(opt.warm_start.Ps), ssatoolbox.SSAMatrix(opt.warm_start.Pn));
+    else
+        ssamain.parameters.setWarmStart(ssatoolbox.SSAMatrix(opt.warm_start.Ps), []);
+    end
+elseif ~isempty(opt.warm_start)
+    error('Error: warm_start has to be a structure or a file name.\n');
+end
 ssamain.parameters.setUseMean(opt.use_mean);
 ssamain.parameters.setUseCovariance(opt.use_covariance);
 ssamain.parameters.setIgnoreDeterminacy(opt.ignore_determinacy);
@@ -241,10 +379,11 @@ if ret == false
 end
 
 % return results
-Ps = ssamain.results.Ps.getArray;
-Pn = ssamain.results.Pn.getArray;
-As = ssamain.results.Bs.getArray;
-An = ssamain.results.Bn.getArray;
+results = ssamain.getResults;
+Ps = results.Ps.getArray;
+Pn = results.Pn.getArray;
+As = results.Bs.getArray;
+An = results.Bn.getArray;
 
 % ssa_results structure as described in the manual
 ssa_results = struct;
@@ -274,10 +413,10 @@ else
     parameters.eq_epochs = opt.equal_epochs;
 end
 ssa_results.parameters = parameters;
-ssa_results.loss_s = ssamain.results.loss_s;
-ssa_results.loss_n = ssamain.results.loss_n;
-ssa_results.iterations_s = ssamain.results.iterations_s;
-ssa_results.iterations_n = ssamain.results.iterations_n;
+ssa_results.loss_s = results.loss_s;
+ssa_results.loss_n = results.loss_n;
+ssa_results.iterations_s = results.iterations_s;
+ssa_results.iterations_n = results.iterations_n;
 
 ssa_results.description = ['SSA results (' datestr(now) ')'];
 
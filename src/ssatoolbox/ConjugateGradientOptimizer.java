@@ -0,0 +1,125 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+/**
+ * Polak-Ribiere conjugate gradient on the rotations with a backtracking line search.
+ */
+class ConjugateGradientOptimizer extends Optimizer
+{
+    /**
+     * Creates a new conjugate gradient optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    ConjugateGradientOptimizer(SSAParameters par)
+    {
+        super(par);
+    }
+
+    protected void run()
+    {
+        double grad[] = ws.getGradient();
+        double gradOld[] = new double[n*n];
+        double alpha[] = new double[n*n];
+        double search[] = new double[n*n];
+        double lossNew = 0;
+        int i;
+        for(i = 0; i < maxIterations; i++)
+        {
+            if(i > 0 && pastDeadline())
+            {
+                break;
+            }
+
+            // get current objective function value and gradient
+            loss = evaluateGradient();
+
+            // conjugate gradient
+            if(i == 0)
+            {
+                for(int j = 0; j < alpha.length; j++)
+                {
+                    alpha[j] = -grad[j];
+                }
+            }
+            else
+            {
+                double gamma = 0.0;
+                for(int j = 0; j < grad.length; j++)
+                {
+                    gamma += grad[j]*(grad[j] - gradOld[j]);
+                }
+                gamma /= MathFunctions.dot(gradOld, gradOld);
+                for(int j = 0; j < alpha.length; j++)
+                {
+                    alpha[j] = -grad[j] + gamma*alpha[j];
+                }
+            }
+            System.arraycopy(grad, 0, gradOld, 0, grad.length);
+
+            // normalize search direction
+            double searchNorm = Math.sqrt(MathFunctions.dot(alpha, alpha) * 2);
+            for(int j = 0; j < search.length; j++)
+            {
+                search[j] = alpha[j] / searchNorm;
+            }
+            double slope = inner(grad, search);
+
+            // backtracking line search
+            lossNew = lineSearch(search, loss, slope);
+            iterationDone(i, loss, step);
+
+            // stop if line search failed
+            if(lossNew >= loss)
+            {
+                converged = true;
+                break;
+            }
+
+            // stop if relative function decrease is below threshold
+            double relDecrease = Math.abs((loss - lossNew)/loss);
+            if(relDecrease < RDEC_THRESHOLD)
+            {
+                converged = true;
+                break;
+            }
+
+            // rotated S and mu become the current ones; update demixing matrix
+            ws.accept();
+        }
+
+        loss = Math.min(loss, lossNew);
+        iterations = i;
+    }
+}
@@ -99,6 +99,9 @@ public class Data {
     /** Array of means, if specified directly */
     public SSAMatrix customMu[];
 
+    /** Number of data points in the epochs, if specified directly with the moments (otherwise all epochs have the same weight) */
+    protected int customEpochSizes[] = null;
+
     /** Number of data points in the epochs */
     protected int epochSizes[];
 
@@ -117,6 +120,15 @@ public class Data {
     /** Number of equally sized epochs, chosen by the heuristic (if this option is used) */
     protected int numberOfEpochsHeuristic = -1;
 
+    /** Number of principal components onto which the data is projected by epochize() (0: no limit) */
+    protected int numberOfPrincipalComponents = 0;
+
+    /** Fraction of the variance which the principal components have to explain (0: no limit) */
+    protected double retainedVariance = 0.0;
+
+    /** Projection onto the principal components (p x n with orthonormal rows), null if the data has not been reduced */
+    protected SSAMatrix reduction = null;
+
     /** Epochization type, by default "equally sized epochs" */
     protected int epochType = EPOCHS_EQUALLY;
 
@@ -136,6 +148,50 @@ public class Data {
      */
     public Data() { }
 
+    /**
+     * Creates a snapshot of the given data: the time series, the given moments and the epoch
+     * settings are copied, so that later changes of the given data (or of its matrices) do not
+     * affect the snapshot. The moments of the epochs are not copied; they are computed again
+     * by epochize(). The snapshot has no logger and no property change listeners.
+     *
+     * @param data data to copy
+     */
+    public Data(Data data)
+    {
+        timeseriesFile = data.timeseriesFile;
+        epochDefinitionFile = data.epochDefinitionFile;
+        epochDefinition = (data.epochDefinition == null) ? null : data.epochDefinition.clone();
+        customEpochs = data.customEpochs;
+        X = (data.X == null) ? null : new SSAMatrix(data.X);
+        customS = copyOf(data.customS);
+        customMu = copyOf(data.customMu);
+        customEpochSizes = (data.customEpochSizes == null) ? null : data.customEpochSizes.clone();
+        numberOfEqualSizeEpochs = data.numberOfEqualSizeEpochs;
+        numberOfEpochsHeuristic = data.numberOfEpochsHeuristic;
+        numberOfPrincipalComponents = data.numberOfPrincipalComponents;
+        retainedVariance = data.retainedVariance;
+        epochType = data.epochType;
+        inputDataformat = data.inputDataformat;
+        outputDataformat = data.outputDataformat;
+    }
+
+    /**
+     * Copies an array of matrices (null stays null).
+     */
+    private static SSAMatrix[] copyOf(SSAMatrix M[])
+    {
+        if(M == null)
+        {
+            return null;
+        }
+        SSAMatrix copy[] = new SSAMatrix[M.length];
+        for(int i = 0; i < M.length; i++)
+        {
+            copy[i] = (M[i] == null) ? null : new SSAMatrix(M[i]);
+        }
+        return copy;
+    }
+
     /**
      * Returns the input data format.
      *
@@ -196,6 +252,84 @@ public class Data {
         else return 0;
     }
 
+    /**
+     * Returns the number of dimensions in which SSA runs: the number of principal components if
+     * the data has been projected onto them by epochize(), the dimension of the dataset
+     * otherwise.
+     *
+     * @return number of (reduced) dimensions
+     */
+    public int getNumberOfReducedDimensions()
+    {
+        return (reduction != null) ? reduction.getRows() : getNumberOfDimensions();
+    }
+
+    /**
+     * Returns the projection onto the principal components which has been applied by epochize().
+     *
+     * @return p x n matrix with orthonormal rows (null if the data has not been reduced)
+     */
+    public SSAMatrix getReduction()
+    {
+        return reduction;
+    }
+
+    /**
+     * Returns the maximum number of principal components onto which the data is projected.
+     *
+     * @return number of principal components (0: no limit)
+     */
+    public int getNumberOfPrincipalComponents() {
+        return numberOfPrincipalComponents;
+    }
+
+    /**
+     * Sets the maximum number of principal components of the covariance matrix over all epochs,
+     * onto which the data is projected before the epoch moments are whitened. SSA then runs in
+     * the reduced dimensions, which saves time if many channels have (nearly) no variance; the
+     * results are mapped back to the original channels. The directions which are discarded
+     * belong to neither subspace, so Ps and Pn together have only as many rows as components.
+     * The data is only reduced if the epoch covariance matrices are available.
+     *
+     * @param numberOfPrincipalComponents number of principal components (0: no limit, default)
+     */
+    public void setNumberOfPrincipalComponents(int numberOfPrincipalComponents) {
+        if(numberOfPrincipalComponents < 0) throw new IllegalArgumentException("Number of principal components must not be negative");
+
+        if(numberOfPrincipalComponents != this.numberOfPrincipalComponents) {
+            int oldval = this.numberOfPrincipalComponents;
+            this.numberOfPrincipalComponents = numberOfPrincipalComponents;
+            propertyChangeSupport.firePropertyChange("numberOfPrincipalComponents", oldval, numberOfPrincipalComponents);
+        }
+    }
+
+    /**
+     * Returns the fraction of the variance which the principal components have to explain.
+     *
+     * @return fraction of the variance (0: no limit)
+     */
+    public double getRetainedVariance() {
+        return retainedVariance;
+    }
+
+    /**
+     * Sets the fraction of the total variance which the principal components onto which the
+     * data is projected have to explain (see setNumberOfPrincipalComponents()). The smallest
+     * number of components which explain this fraction is used; if a number of components is
+     * set as well, the smaller one of both is used.
+     *
+     * @param retainedVariance fraction of the variance in (0, 1] (0: no limit, default)
+     */
+    public void setRetainedVariance(double retainedVariance) {
+        if(retainedVariance < 0 || retainedVariance > 1) throw new IllegalArgumentException("Retained variance must be between 0 and 1");
+
+        if(retainedVariance != this.retainedVariance) {
+            double oldval = this.retainedVariance;
+            this.retainedVariance = retainedVariance;
+            propertyChangeSupport.firePropertyChange("retainedVariance", oldval, retainedVariance);
+        }
+    }
+
     /**
      * Returns the currently used epoch type.
      *
@@ -364,6 +498,27 @@ public class Data {
     }
 
 
+    /**
+     * Sets the moments of the epochs directly (see EPOCHS_SPECIFIED_MOMENTS), together with the
+     * numbers of data points in the epochs, by which the epochs are weighted as if the moments
+     * had been computed from a time series.
+     *
+     * @param S array of covariance matrices over all epochs
+     * @param mu array of means over all epochs
+     * @param epochSizes number of data points in the epochs
+     */
+    public void setEpochMoments(SSAMatrix S[], SSAMatrix mu[], int epochSizes[])
+    {
+        if(S.length != epochSizes.length || mu.length != epochSizes.length)
+        {
+            throw new IllegalArgumentException("The number of moments has to be the number of epochs");
+        }
+        customS = S;
+        customMu = mu;
+        customEpochSizes = epochSizes.clone();
+        setEpochType(EPOCHS_SPECIFIED_MOMENTS);
+    }
+
     /**
      * Sets a custom epoch definition.
      *
@@ -449,57 +604,38 @@ public class Data {
     }
 
     /**
-     * Calculates the covariance matrices and means for each epoch.
+     * Calculates the covariance matrices and means for each epoch. If a number of principal
+     * components or a fraction of the variance has been set, the moments are projected onto
+     * the principal components of the covariance matrix over all epochs.
      *
      * @param useCovariance use covariance matrices
      */
     public void epochize(boolean useCovariance)
     {
-        if(getEpochType() == EPOCHS_CUSTOM)
-        {
-            epochizeCustom(epochDefinition, useCovariance);
-        }
-        else if(getEpochType() == EPOCHS_EQUALLY)
-        {
-            epochizeEqually(getNumberOfEqualSizeEpochs(), useCovariance);
-        }
-        else if(getEpochType() == EPOCHS_EQUALLY_HEURISTIC)
-        {
-            epochizeEqually(getNumberOfEpochsHeuristic(), useCovariance);
-        }
-        else if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS)
+        if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS)
         {
             // customMu and customS have to be already specified
             int epochSizes[] = new int[getNumberOfEpochs()];
             for(int i = 0; i < getNumberOfEpochs(); i++)
             {
-                epochSizes[i] = 1;
+                epochSizes[i] = (customEpochSizes == null) ? 1 : customEpochSizes[i];
             }
             initializeSSA(customS, customMu, epochSizes, useCovariance);
         }
-    }
-
-    /**
-     * Does an epochization with equally-sized epochs.
-     *
-     * @param epochs number of epochs
-     * @param useCovariance use covariance matrices
-     */
-    private void epochizeEqually(int epochs, boolean useCovariance)
-    {
-        if(X != null)
+        else if(X != null)
         {
-            SSAMatrix S[] = new SSAMatrix[epochs];
-            SSAMatrix mu[] = new SSAMatrix[epochs];
-            int epochSizes[] = new int[epochs];
-            int epochSize = X.getColumns() / epochs;
+            int samples[][] = epochSamples();
 
-            for(int i = 0; i < epochs; i++)
+            SSAMatrix mu[] = new SSAMatrix[samples.length];
+            SSAMatrix S[] = new SSAMatrix[samples.length];
+            int epochSizes[] = new int[samples.length];
+
+            for(int i = 0; i < samples.length; i++)
             {
-                SSAMatrix epoch = X.getRange(0, X.getRows(), i*epochSize, (i+1)*epochSize);
+                SSAMatrix epoch = X.getColumns(samples[i]);
                 mu[i] = MathFunctions.mean(epoch);
                 S[i] = MathFunctions.cov(epoch, mu[i]);
-                epochSizes[i] = epochSize;
+                epochSizes[i] = samples[i].length;
             }
 
             initializeSSA(S, mu, epochSizes, useCovariance);
@@ -507,46 +643,59 @@ public class Data {
     }
 
     /**
-     * Does a custom epochization.
+     * Returns the indices of the samples in every epoch, in the order in which epochize() computes
+     * the moments of the epochs. For equally-sized epochs, the remaining samples at the end of the
+     * time series are left out. The time series has to be set; epochs of type
+     * EPOCHS_SPECIFIED_MOMENTS have no samples.
      *
-     * @param epDef custom epoch definition
-     * @param useCovariance use covariance matrices
+     * @return array of sample indices for every epoch
      */
-    private void epochizeCustom(int epDef[], boolean useCovariance)
+    int[][] epochSamples()
     {
-        TreeMap<Integer, LinkedList<Integer>> map = new TreeMap<Integer, LinkedList<Integer>>();
-        for(int i = 0; i < epDef.length; i++)
+        if(getEpochType() == EPOCHS_CUSTOM)
         {
-            LinkedList<Integer> l = map.get(epDef[i]);
-            if(l == null)
+            TreeMap<Integer, LinkedList<Integer>> map = new TreeMap<Integer, LinkedList<Integer>>();
+            for(int i = 0; i < epochDefinition.length; i++)
             {
-                l = new LinkedList<Integer>();
-                l.add(i);
-                map.put(epDef[i], l);
+                LinkedList<Integer> l = map.get(epochDefinition[i]);
+                if(l == null)
+                {
+                    l = new LinkedList<Integer>();
+                    l.add(i);
+                    map.put(epochDefinition[i], l);
+                }
+                else
+                {
+                    l.add(i);
+                }
             }
-            else
+
+            int samples[][] = new int[map.size()][];
+            Iterator<LinkedList<Integer>> it = map.values().iterator();
+            for(int i = 0; i < samples.length; i++)
             {
-                l.add(i);
+                samples[i] = toIntArray(it.next());
             }
-        }
 
-        SSAMatrix mu[] = new SSAMatrix[map.size()];
-        SSAMatrix S[] = new SSAMatrix[map.size()];
-        int epochSizes[] = new int[map.size()];
+            return samples;
+        }
 
-        Iterator<LinkedList<Integer>> it = map.values().iterator();
-        int i = 0;
-        while(it.hasNext())
+        int epochs = getNumberOfEpochs();
+        if(epochs < 1)
         {
-            LinkedList<Integer> ep = it.next();
-            SSAMatrix samples = X.getColumns(toIntArray(ep));
-            mu[i] = MathFunctions.mean(samples);
-            S[i] = MathFunctions.cov(samples, mu[i]);
-            epochSizes[i] = samples.getColumns();
-            i++;
+            throw new IllegalArgumentException("Epochs not specified");
+        }
+        int epochSize = X.getColumns() / epochs;
+        int samples[][] = new int[epochs][epochSize];
+        for(int i = 0; i < epochs; i++)
+        {
+            for(int k = 0; k < epochSize; k++)
+            {
+                samples[i][k] = i*epochSize + k;
+            }
         }
 
-        initializeSSA(S, mu, epochSizes, useCovariance);
+        return samples;
     }
 
     private int[] toIntArray(LinkedList<Integer> l)
@@ -571,6 +720,32 @@ public class Data {
      */
     private void initializeSSA(SSAMatrix S[], SSAMatrix mu[], int epochSizes[], boolean useCovariance)
     {
+        reduction = null;
+        if(S != null && (numberOfPrincipalComponents > 0 || retainedVariance > 0.0))
+        {
+            reduction = principalComponents(S, epochSizes);
+            if(reduction != null)
+            {
+                // all moments in the reduced dimensions (new arrays, since S may be customS)
+                SSAMatrix reductionT = reduction.transpose();
+                SSAMatrix reducedS[] = new SSAMatrix[S.length];
+                for(int i = 0; i < S.length; i++)
+                {
+                    reducedS[i] = reduction.mmul(S[i]).mmuli(reductionT);
+                }
+                S = reducedS;
+                if(mu != null)
+                {
+                    SSAMatrix reducedMu[] = new SSAMatrix[mu.length];
+                    for(int i = 0; i < mu.length; i++)
+                    {
+                        reducedMu[i] = reduction.mmul(mu[i]);
+                    }
+                    mu = reducedMu;
+                }
+            }
+        }
+
         if(useCovariance)
         {
             // check whether regularization is necessary on covariance matrices
@@ -610,7 +785,7 @@ public class Data {
         int M = 0; // total number of samples in the epochs
         for(int i = 0; i < epochs; i++)
         {
-        	if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS)
+        	if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS && customEpochSizes == null)
         	{
         	    if(S != null)
         	        Sall.addi(S[i]);
@@ -625,7 +800,7 @@ public class Data {
             }
         }
 
-        if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS)
+        if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS && customEpochSizes == null)
         {
             if(S != null)
                 Sall.divi((double)epochs);
@@ -666,6 +841,68 @@ public class Data {
         this.epochSizes = epochSizes;
     }
 
+    /**
+     * Computes the projection onto the principal components of the covariance matrix over all
+     * epochs, which are selected by the number of components and the fraction of the variance.
+     *
+     * @param S array of covariance matrices over all epochs
+     * @param epochSizes number of data points in the epochs
+     * @return p x n projection (null if all n components are selected)
+     */
+    private SSAMatrix principalComponents(SSAMatrix S[], int epochSizes[])
+    {
+        // covariance matrix over all epochs (as computed below by initializeSSA())
+        int n = S[0].getRows();
+        SSAMatrix C = SSAMatrix.zeros(n, n);
+        if(getEpochType() == EPOCHS_SPECIFIED_MOMENTS && customEpochSizes == null)
+        {
+            for(int i = 0; i < S.length; i++)
+            {
+                C.addi(S[i]);
+            }
+        }
+        else
+        {
+            for(int i = 0; i < S.length; i++)
+            {
+                C.addi(S[i].mul((double)epochSizes[i] - 1.0));
+            }
+        }
+
+        // eigenvalues in ascending order
+        SSAMatrix E[] = C.symmetricEigenvectors();
+        double total = E[1].diag().sum();
+        int p = (numberOfPrincipalComponents > 0) ? Math.min(numberOfPrincipalComponents, n) : n;
+        if(retainedVariance > 0.0)
+        {
+            double explained = 0.0;
+            for(int k = 1; k <= n; k++)
+            {
+                explained += E[1].get(n - k, n - k);
+                if(explained >= retainedVariance*total)
+                {
+                    p = Math.min(p, k);
+                    break;
+                }
+            }
+        }
+        if(p >= n)
+        {
+            return null;
+        }
+
+        double explained = 0.0;
+        int order[] = new int[p];
+        for(int k = 0; k < p; k++)
+        {
+            order[k] = n - 1 - k;
+            explained += E[1].get(n - 1 - k, n - 1 - k);
+        }
+        appendToLog("Projecting the data onto " + p + " principal components, which explain "
+                    + Math.round(1000.0*explained/total)/10.0 + "% of the variance.");
+        return E[0].getColumns(order).transpose();
+    }
+
     /**
      * Appends a message to the log.
      *
@@ -0,0 +1,461 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+/**
+ * Jacobi-style sweeps of plane rotations between the first d (optimized) and the last n - d
+ * coordinates, as in the joint diagonalization algorithms (e.g. JADE).
+ *
+ * The rotated covariance matrices and means of all epochs are kept explicitly. A rotation in the
+ * plane of an s-coordinate a and an n-coordinate b changes only the rows and columns a and b of
+ * every covariance matrix, so it costs O(K*n) operations for K epochs instead of the O(K*n^2*d)
+ * of an evaluation in the workspace. The log-determinant of the d x d block is the one of the
+ * other d - 1 s-coordinates, which does not change, plus the log of the conditional variance of
+ * the rotated coordinate a given them. Hence, the conditional covariance matrices of the
+ * coordinates a, d, ..., n-1 are computed once for every a, and the rotations (a, b) for all b
+ * are then optimized one after the other on these matrices by a safeguarded Newton method on the
+ * angle, with O(K) operations per step.
+ *
+ * If d > n - d, the same is done for the last n - d coordinates of the inverse covariance
+ * matrices, since log(det(C_ss)) = log(det(C)) + log(det(inv(C)_nn)) and the rotations do not
+ * change det(C), and the squared norm of the first d coordinates of the means is the constant
+ * squared norm of the means minus the one of the last n - d coordinates. So the work per sweep
+ * grows with min(d, n - d)^2.
+ *
+ * An iteration is a sweep over all d*(n - d) planes; its rotations are accumulated and applied to
+ * the workspace at the end of the sweep. Like every coordinate descent, the sweeps converge only
+ * linearly, and very slowly along curved valleys of the loss. Hence, they stop as soon as the
+ * relative decrease of a sweep is below SWEEP_THRESHOLD, and the solution is polished by the
+ * conjugate gradient.
+ */
+class GivensOptimizer extends Optimizer
+{
+    /** Relative decrease of the loss per sweep below which the conjugate gradient takes over */
+    private static final double SWEEP_THRESHOLD = 1e-3;
+
+    // maximum number of Newton steps per plane and smallest angle which is applied
+    private static final int NEWTON_STEPS = 20;
+    private static final double MIN_ANGLE = 1e-12;
+
+    private int epochs;
+
+    /** Coordinates of the block whose log-determinant is computed, and the other coordinates */
+    private int block[];
+    private int other[];
+    /** Sign of the mean term of the block */
+    private double meanSign;
+
+    /** Rotated covariance matrices (or their inverses; n x n) and means (null, if the means are not used) of the epochs */
+    private double Cov[][];
+    private double mean[][];
+    private double w[];
+
+    /** Product of the rotations of the current sweep */
+    private double G[];
+
+    /** Conditional covariance matrices of a block coordinate and the other coordinates given the rest of the block */
+    private double Q[][];
+
+    // buffers for the conditioning and the angle
+    private double L[];
+    private double Z[];
+    private double qA[];
+    private double qB[];
+    private double qC[];
+    private double meanCos;
+    private double meanSin;
+    private final double deriv[] = new double[2];
+    private final double derivNew[] = new double[2];
+
+    private final SSAParameters par;
+
+    /**
+     * Creates a new Givens rotation optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    GivensOptimizer(SSAParameters par)
+    {
+        super(par);
+        this.par = par;
+    }
+
+    protected void run()
+    {
+        int d = ws.getNumberOfRows();
+        epochs = ws.getNumberOfEpochs();
+        boolean inverse = (d > n - d);
+        block = new int[inverse ? n - d : d];
+        other = new int[n - block.length];
+        for(int j = 0; j < n; j++)
+        {
+            if((j < d) != inverse)
+            {
+                block[j - (inverse ? d : 0)] = j;
+            }
+            else
+            {
+                other[j - (inverse ? 0 : d)] = j;
+            }
+        }
+        meanSign = inverse ? -1.0 : 1.0;
+        int db = block.length;
+        int m = other.length + 1;
+
+        loss = evaluateGradient();
+        Cov = new double[epochs][];
+        mean = ws.getRotatedMean(0) == null ? null : new double[epochs][];
+        w = new double[epochs];
+        for(int k = 0; k < epochs; k++)
+        {
+            SSAMatrix Ck = ws.getRotatedCovariance(k);
+            Cov[k] = SSAWorkspace.toArray(inverse ? MathFunctions.inv(Ck) : Ck);
+            if(mean != null)
+            {
+                mean[k] = SSAWorkspace.toArray(ws.getRotatedMean(k));
+            }
+            w[k] = ws.getEpochWeight(k);
+        }
+        G = new double[n*n];
+        Q = new double[epochs][m*m];
+        L = new double[(db - 1)*(db - 1)];
+        Z = new double[(db - 1)*m];
+        qA = new double[epochs];
+        qB = new double[epochs];
+        qC = new double[epochs];
+
+        // at least one iteration is left for the polish
+        int i;
+        for(i = 0; i + 1 < maxIterations; i++)
+        {
+            if(i > 0 && pastDeadline())
+            {
+                break;
+            }
+            if(i > 0 && listener != null)
+            {
+                // gradient at the start of the sweep for the event
+                loss = evaluateGradient();
+            }
+
+            long start = (listener != null) ? System.nanoTime() : 0;
+            for(int j = 0; j < n*n; j++)
+            {
+                G[j] = 0.0;
+            }
+            for(int j = 0; j < n; j++)
+            {
+                G[j*n + j] = 1.0;
+            }
+            double angle = sweep();
+            ws.applyRotation(G);
+            double lossNew = normalize(ws.evaluate(null, false));
+            if(listener != null)
+            {
+                lineSearchTime = System.nanoTime() - start;
+                trials = db*(m - 1);
+                iterationDone(i, loss, angle);
+            }
+
+            // stop if the sweep has not decreased the loss significantly
+            double relDecrease = (loss - lossNew)/Math.abs(loss);
+            loss = lossNew;
+            if(relDecrease < SWEEP_THRESHOLD)
+            {
+                i++;
+                break;
+            }
+        }
+
+        // polish with the conjugate gradient
+        Optimizer polish = new ConjugateGradientOptimizer(par);
+        polish.setIterationListener(listener, restart, firstIteration + i);
+        if(hasDeadline)
+        {
+            polish.setDeadline(deadline);
+        }
+        polish.minimize(ws, k, sign < 0, maxIterations - i);
+        loss = polish.getLoss();
+        iterations = i + polish.getIterations();
+        converged = polish.isConverged();
+        deadlineReached |= polish.isDeadlineReached();
+    }
+
+    /**
+     * Optimizes the rotations in all planes of a block coordinate and another coordinate once.
+     *
+     * @return largest absolute angle of the sweep
+     */
+    private double sweep()
+    {
+        int m = other.length + 1;
+        double maxAngle = 0.0;
+        for(int j = 0; j < block.length; j++)
+        {
+            for(int k = 0; k < epochs; k++)
+            {
+                conditionalCovariance(j, k);
+            }
+            int a = block[j];
+            for(int p = 1; p < m; p++)
+            {
+                int b = other[p - 1];
+                double theta = optimizeAngle(a, b, p);
+                if(Math.abs(theta) > MIN_ANGLE)
+                {
+                    rotate(a, b, p, Math.cos(theta), Math.sin(theta));
+                    maxAngle = Math.max(maxAngle, Math.abs(theta));
+                }
+            }
+        }
+        return maxAngle;
+    }
+
+    /**
+     * Coordinate which belongs to row p of the conditional covariance matrices of block[j].
+     */
+    private int coordinate(int j, int p)
+    {
+        return (p == 0) ? block[j] : other[p - 1];
+    }
+
+    /**
+     * Computes the covariance matrix of the coordinates t = (block[j], other) of an epoch,
+     * conditioned on the rest r of the block: Q = C_tt - C_tr*inv(C_rr)*C_rt.
+     */
+    private void conditionalCovariance(int j, int k)
+    {
+        int db = block.length;
+        int m = other.length + 1;
+        double S[] = Cov[k];
+        double Qk[] = Q[k];
+        for(int p = 0; p < m; p++)
+        {
+            int tp = coordinate(j, p);
+            for(int q = 0; q < m; q++)
+            {
+                Qk[p*m + q] = S[tp*n + coordinate(j, q)];
+            }
+        }
+        if(db == 1)
+        {
+            return;
+        }
+
+        // Z = inv(C_rr)*C_rt
+        int r = 0;
+        for(int u = 0; u < db; u++)
+        {
+            if(u == j)
+            {
+                continue;
+            }
+            int c = 0;
+            for(int v = 0; v < db; v++)
+            {
+                if(v != j)
+                {
+                    L[r*(db - 1) + c++] = S[block[u]*n + block[v]];
+                }
+            }
+            for(int p = 0; p < m; p++)
+            {
+                Z[r*m + p] = S[block[u]*n + coordinate(j, p)];
+            }
+            r++;
+        }
+        MathFunctions.cholesky(L, db - 1, db - 1, L);
+        MathFunctions.solveCholesky(L, Z, db - 1, m);
+
+        for(int p = 0; p < m; p++)
+        {
+            int tp = coordinate(j, p);
+            for(int q = p; q < m; q++)
+            {
+                double sum = 0.0;
+                r = 0;
+                for(int u = 0; u < db; u++)
+                {
+                    if(u != j)
+                    {
+                        sum += S[tp*n + block[u]]*Z[r*m + q];
+                        r++;
+                    }
+                }
+                Qk[p*m + q] -= sum;
+                Qk[q*m + p] = Qk[p*m + q];
+            }
+        }
+    }
+
+    /**
+     * Finds the angle of the rotation in the plane (a, b) which minimizes the loss, starting from
+     * zero. With phi = 2*theta, the conditional variance of the rotated coordinate is
+     * qA + qB*cos(phi) + qC*sin(phi) and the mean term is meanCos*cos(phi) + meanSin*sin(phi)
+     * plus a constant.
+     *
+     * @return angle theta
+     */
+    private double optimizeAngle(int a, int b, int p)
+    {
+        int m = other.length + 1;
+        meanCos = 0.0;
+        meanSin = 0.0;
+        for(int k = 0; k < epochs; k++)
+        {
+            double Qk[] = Q[k];
+            qA[k] = 0.5*(Qk[0] + Qk[p*m + p]);
+            qB[k] = 0.5*(Qk[0] - Qk[p*m + p]);
+            qC[k] = Qk[p];
+            if(mean != null)
+            {
+                double ma = mean[k][a];
+                double mb = mean[k][b];
+                meanCos += meanSign*w[k]*0.5*(ma*ma - mb*mb);
+                meanSin += meanSign*w[k]*ma*mb;
+            }
+        }
+
+        double phi = 0.0;
+        double f = angleLoss(phi, deriv);
+        for(int it = 0; it < NEWTON_STEPS; it++)
+        {
+            // Newton step if the loss is locally convex, otherwise a gradient step of pi/4
+            double delta = (deriv[1] > 0.0) ? -deriv[0]/deriv[1] : -Math.signum(deriv[0])*Math.PI/4;
+            if(Math.abs(delta) > Math.PI/2)
+            {
+                delta = Math.signum(delta)*Math.PI/2;
+            }
+
+            // backtracking, so that the loss never increases
+            double fNew = f;
+            boolean decreased = false;
+            for(int j = 0; j < 30 && !decreased; j++)
+            {
+                fNew = angleLoss(phi + delta, derivNew);
+                decreased = (fNew <= f);
+                if(!decreased)
+                {
+                    delta *= 0.5;
+                }
+            }
+            if(!decreased)
+            {
+                break;
+            }
+            phi += delta;
+            f = fNew;
+            deriv[0] = derivNew[0];
+            deriv[1] = derivNew[1];
+            if(Math.abs(delta) < MIN_ANGLE)
+            {
+                break;
+            }
+        }
+        return 0.5*phi;
+    }
+
+    /**
+     * Computes the part of the loss which depends on the angle phi = 2*theta and its first and
+     * second derivative w.r.t. phi.
+     */
+    private double angleLoss(double phi, double derivative[])
+    {
+        double cos = Math.cos(phi);
+        double sin = Math.sin(phi);
+        double f = meanCos*cos + meanSin*sin;
+        double g = -meanCos*sin + meanSin*cos;
+        double h = -f;
+        for(int k = 0; k < epochs; k++)
+        {
+            double q = qA[k] + qB[k]*cos + qC[k]*sin;
+            double dq = (-qB[k]*sin + qC[k]*cos)/q;
+            double ddq = (qA[k] - q)/q;
+            f -= w[k]*Math.log(q);
+            g -= w[k]*dq;
+            h -= w[k]*(ddq - dq*dq);
+        }
+        derivative[0] = sign*g;
+        derivative[1] = sign*h;
+        return sign*f;
+    }
+
+    /**
+     * Rotates the coordinates a and b (row p of the conditional covariance matrices) by
+     * x_a = c*x_a + s*x_b, x_b = -s*x_a + c*x_b.
+     */
+    private void rotate(int a, int b, int p, double c, double s)
+    {
+        int m = other.length + 1;
+        for(int k = 0; k < epochs; k++)
+        {
+            rotatePlane(Cov[k], n, a, b, c, s);
+            rotatePlane(Q[k], m, 0, p, c, s);
+            if(mean != null)
+            {
+                double ma = mean[k][a];
+                double mb = mean[k][b];
+                mean[k][a] = c*ma + s*mb;
+                mean[k][b] = -s*ma + c*mb;
+            }
+        }
+        for(int j = 0; j < n; j++)
+        {
+            double ga = G[a*n + j];
+            double gb = G[b*n + j];
+            G[a*n + j] = c*ga + s*gb;
+            G[b*n + j] = -s*ga + c*gb;
+        }
+    }
+
+    /**
+     * Applies a plane rotation to the rows and columns a and b of a symmetric size x size matrix.
+     */
+    private static void rotatePlane(double S[], int size, int a, int b, double c, double s)
+    {
+        for(int j = 0; j < size; j++)
+        {
+            double sa = S[a*size + j];
+            double sb = S[b*size + j];
+            S[a*size + j] = c*sa + s*sb;
+            S[b*size + j] = -s*sa + c*sb;
+        }
+        for(int j = 0; j < size; j++)
+        {
+            double sa = S[j*size + a];
+            double sb = S[j*size + b];
+            S[j*size + a] = c*sa + s*sb;
+            S[j*size + b] = -s*sa + c*sb;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+/**
+ * State and timings of one iteration of the optimization, as passed to an IterationListener.
+ * Loss and gradient are normalized as in SSA.normalizeObjectiveFunction(), and the loss of the
+ * optimization of the n-sources is negative (as it is maximized). For the mini-batch steps of
+ * the stochastic optimizer, loss and gradient are the (not normalized) ones of the mini-batch.
+ */
+public class IterationEvent
+{
+    /** Index of the restart (starting with 0) */
+    public final int restart;
+
+    /** True for the optimization of the n-sources, false for the s-sources */
+    public final boolean nSources;
+
+    /** Index of the iteration within the restart (starting with 0) */
+    public final int iteration;
+
+    /** Loss at the start of the iteration */
+    public final double loss;
+
+    /** Norm of the gradient at the start of the iteration */
+    public final double gradientNorm;
+
+    /** Step size of the last trial step (for the trust-region method: norm of the step; 0 if it has been rejected) */
+    public final double step;
+
+    /** Number of evaluations of the objective function in the line search */
+    public final int lineSearchTrials;
+
+    /** Time for the evaluation of the loss and the gradient in nanoseconds */
+    public final long gradientTime;
+
+    /** Time for the line search (for the trust-region method: the inner iterations and the trial step) in nanoseconds */
+    public final long lineSearchTime;
+
+    /**
+     * Creates a new event.
+     *
+     * @param restart index of the restart
+     * @param nSources true for the optimization of the n-sources
+     * @param iteration index of the iteration within the restart
+     * @param loss loss at the start of the iteration
+     * @param gradientNorm norm of the gradient at the start of the iteration
+     * @param step step size of the last trial step
+     * @param lineSearchTrials number of evaluations in the line search
+     * @param gradientTime time for the loss and the gradient in nanoseconds
+     * @param lineSearchTime time for the line search in nanoseconds
+     */
+    public IterationEvent(int restart, boolean nSources, int iteration, double loss, double gradientNorm,
+                          double step, int lineSearchTrials, long gradientTime, long lineSearchTime)
+    {
+        this.restart = restart;
+        this.nSources = nSources;
+        this.iteration = iteration;
+        this.loss = loss;
+        this.gradientNorm = gradientNorm;
+        this.step = step;
+        this.lineSearchTrials = lineSearchTrials;
+        this.gradientTime = gradientTime;
+        this.lineSearchTime = lineSearchTime;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+/**
+ * Limited-memory BFGS on the rotations with a backtracking line search.
+ *
+ * The steps s_j = t*search and the gradient differences y_j are stored as antisymmetric matrices
+ * relative to the respective current point. Since every point is moved by multiplying the rotation
+ * from the left, a tangent direction M at the old point is transported to the same matrix M at the
+ * new point, which is an isometry and the identity along the search direction. So the stored pairs
+ * can be used without transforming them.
+ */
+class LBFGSOptimizer extends Optimizer
+{
+    /** Number of stored pairs (s_j, y_j) */
+    private static final int MEMORY = 10;
+
+    /**
+     * Creates a new L-BFGS optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    LBFGSOptimizer(SSAParameters par)
+    {
+        super(par);
+    }
+
+    protected void run()
+    {
+        double grad[] = ws.getGradient();
+        double gradOld[] = new double[n*n];
+        double search[] = new double[n*n];
+        double s[][] = new double[MEMORY][n*n];
+        double y[][] = new double[MEMORY][n*n];
+        double rho[] = new double[MEMORY];
+        double a[] = new double[MEMORY];
+        int stored = 0; // number of stored pairs
+        int newest = -1; // index of the newest pair
+        boolean stepped = false; // true, if a step has been accepted in the last iteration
+        double lossNew = 0;
+        int i;
+        for(i = 0; i < maxIterations; i++)
+        {
+            if(i > 0 && pastDeadline())
+            {
+                break;
+            }
+
+            // get current objective function value and gradient
+            loss = evaluateGradient();
+
+            // store the new pair, if it satisfies the curvature condition
+            if(stepped)
+            {
+                int next = (newest + 1) % MEMORY;
+                double sNext[] = s[next];
+                double yNext[] = y[next];
+                // the step has been stored in search
+                for(int j = 0; j < grad.length; j++)
+                {
+                    sNext[j] = step*search[j];
+                    yNext[j] = grad[j] - gradOld[j];
+                }
+                double sy = inner(sNext, yNext);
+                if(sy > 1e-10*Math.sqrt(inner(sNext, sNext)*inner(yNext, yNext)))
+                {
+                    rho[next] = 1.0 / sy;
+                    newest = next;
+                    stored = Math.min(stored + 1, MEMORY);
+                }
+            }
+            System.arraycopy(grad, 0, gradOld, 0, grad.length);
+
+            // two-loop recursion: search = -H*grad
+            double slope = 0.0;
+            if(stored > 0)
+            {
+                for(int j = 0; j < grad.length; j++)
+                {
+                    search[j] = grad[j];
+                }
+                for(int m = 0, j = newest; m < stored; m++, j = (j + MEMORY - 1) % MEMORY)
+                {
+                    a[j] = rho[j]*inner(s[j], search);
+                    axpy(-a[j], y[j], search);
+                }
+                double gamma = 1.0 / (rho[newest]*inner(y[newest], y[newest]));
+                for(int j = 0; j < search.length; j++)
+                {
+                    search[j] *= gamma;
+                }
+                for(int m = 0, j = (newest + MEMORY - stored + 1) % MEMORY; m < stored; m++, j = (j + 1) % MEMORY)
+                {
+                    double b = rho[j]*inner(y[j], search);
+                    axpy(a[j] - b, s[j], search);
+                }
+                for(int j = 0; j < search.length; j++)
+                {
+                    search[j] = -search[j];
+                }
+                slope = inner(grad, search);
+            }
+            if(stored == 0 || !(slope < 0.0))
+            {
+                // no (descent) direction from the memory: normalized steepest descent, as in the first
+                // iteration of the conjugate gradient
+                stored = 0;
+                double gradNorm = Math.sqrt(MathFunctions.dot(grad, grad) * 2);
+                for(int j = 0; j < search.length; j++)
+                {
+                    search[j] = -grad[j] / gradNorm;
+                }
+                slope = inner(grad, search);
+            }
+            boolean steepest = (stored == 0);
+
+            // backtracking line search
+            lossNew = lineSearch(search, loss, slope);
+            iterationDone(i, loss, step);
+
+            if(lossNew >= loss)
+            {
+                if(!steepest)
+                {
+                    // line search failed along the quasi-Newton direction; restart with the gradient
+                    stored = 0;
+                    stepped = false;
+                    continue;
+                }
+                // stop if line search failed
+                converged = true;
+                break;
+            }
+
+            // stop if relative function decrease is below threshold
+            double relDecrease = Math.abs((loss - lossNew)/loss);
+            if(relDecrease < RDEC_THRESHOLD)
+            {
+                converged = true;
+                break;
+            }
+
+            ws.accept();
+            stepped = true;
+        }
+
+        loss = Math.min(loss, lossNew);
+        iterations = i;
+    }
+
+    /**
+     * y += a*x
+     */
+    private static void axpy(double a, double x[], double y[])
+    {
+        for(int j = 0; j < x.length; j++)
+        {
+            y[j] += a*x[j];
+        }
+    }
+}
@@ -64,10 +64,12 @@ import javax.swing.UIManager;
  * @author Jan Saputra Mueller, saputra@cs.tu-berlin.de
  */
 public class Main {
-    public SSA ssa = new SSA();
-    public SSAParameters parameters = new SSAParameters();
-    public Results results = null;
-    public Data data = new Data();
+    private final SSA ssa = new SSA();
+    public final SSAParameters parameters = new SSAParameters();
+    public final Data data = new Data();
+    // written by the thread which runs SSA (see runSSA())
+    private volatile Results results = null;
+    private volatile Results sweepResults[] = null;
     private GUI gui = null;
     private Logger logger = null;
 
@@ -191,8 +193,16 @@ public class Main {
             boolean useMean = true;
             boolean useCovariance = true;
             long randomSeed = 0;
+            int threads = 1;
             boolean useJBlas = false;
             String outputFile = null;
+            String warmStartFile = null;
+            int sweep[] = null;
+            String traceFile = null;
+            int maxIterations = 0;
+            double timeLimit = 0;
+            int principalComponents = 0;
+            double retainedVariance = 0;
 
             // Parse the command line using java-getopt.
             // i: input data (time series)
@@ -203,9 +213,17 @@ public class Main {
             // m: use mean
             // c: use covariance
             // s: random seed
+            // t: number of threads
             // j: use jBlas
             // o: output file
-            Getopt g = new Getopt("ssa.jar", args, "i:d:r:e:n:m:c:s:j:o:");
+            // w: previous result for the warm start
+            // D: numbers of stationary sources to sweep
+            // T: CSV file for the trace of the iterations
+            // I: maximum number of iterations per restart
+            // L: time limit in seconds
+            // P: number of principal components
+            // V: fraction of the variance explained by the principal components
+            Getopt g = new Getopt("ssa.jar", args, "i:d:r:e:n:m:c:s:t:j:o:w:D:T:I:L:P:V:");
             int c;
             String arg;
             while((c = g.getopt()) != -1)
@@ -282,6 +300,17 @@ public class Main {
                             return;
                         }
                         break;
+                    case 't':
+                        try
+                        {
+                            threads = Integer.parseInt(arg);
+                        }
+                        catch(NumberFormatException e)
+                        {
+                            ssaMain.appendToLog("Argument of option -t has to be a number.");
+                            return;
+                        }
+                        break;
                     case 'j':
                         if(arg.equals("0")) useJBlas = false;
                         else if(arg.equals("1")) useJBlas = true;
@@ -294,6 +323,64 @@ public class Main {
                     case 'o':
                         outputFile = arg;
                         break;
+                    case 'w':
+                        warmStartFile = arg;
+                        break;
+                    case 'D':
+                        sweep = parseNumberList(arg);
+                        if(sweep == null)
+                        {
+                            ssaMain.appendToLog("Argument of option -D has to be a list of numbers or ranges, e.g. 1-4,6.");
+                            return;
+                        }
+                        break;
+                    case 'T':
+                        traceFile = arg;
+                        break;
+                    case 'I':
+                        try
+                        {
+                            maxIterations = Integer.parseInt(arg);
+                        }
+                        catch(NumberFormatException e)
+                        {
+                            ssaMain.appendToLog("Argument of option -I has to be a number.");
+                            return;
+                        }
+                        break;
+                    case 'L':
+                        try
+                        {
+                            timeLimit = Double.parseDouble(arg);
+                        }
+                        catch(NumberFormatException e)
+                        {
+                            ssaMain.appendToLog("Argument of option -L has to be a number.");
+                            return;
+                        }
+                        break;
+                    case 'P':
+                        try
+                        {
+                            principalComponents = Integer.parseInt(arg);
+                        }
+                        catch(NumberFormatException e)
+                        {
+                            ssaMain.appendToLog("Argument of option -P has to be a number.");
+                            return;
+                        }
+                        break;
+                    case 'V':
+                        try
+                        {
+                            retainedVariance = Double.parseDouble(arg);
+                        }
+                        catch(NumberFormatException e)
+                        {
+                            ssaMain.appendToLog("Argument of option -V has to be a number.");
+                            return;
+                        }
+                        break;
                 }
             }
 
@@ -323,7 +410,7 @@ public class Main {
             {
                 ssaMain.parameters.setNumberOfStationarySources(d);
             }
-            else
+            else if(sweep == null)
             {
                 ssaMain.appendToLog("You have to specify the number of stationary sources using the option -d");
                 return;
@@ -342,6 +429,38 @@ public class Main {
             ssaMain.parameters.setUseMean(useMean);
             ssaMain.parameters.setUseCovariance(useCovariance);
 
+            if(maxIterations >= 0 && timeLimit >= 0)
+            {
+                ssaMain.parameters.setMaxIterations(maxIterations);
+                ssaMain.parameters.setTimeLimit(Math.round(1000*timeLimit));
+            }
+            else
+            {
+                ssaMain.appendToLog("The limits specified by the options -I and -L must not be negative.");
+                return;
+            }
+
+            if(principalComponents >= 0 && retainedVariance >= 0 && retainedVariance <= 1)
+            {
+                ssaMain.data.setNumberOfPrincipalComponents(principalComponents);
+                ssaMain.data.setRetainedVariance(retainedVariance);
+            }
+            else
+            {
+                ssaMain.appendToLog("The option -P must not be negative and the option -V has to be between 0 and 1.");
+                return;
+            }
+
+            if(threads > 0)
+            {
+                ssaMain.parameters.setNumberOfThreads(threads);
+            }
+            else
+            {
+                ssaMain.appendToLog("The number of threads specified by the option -t has to be a positive number.");
+                return;
+            }
+
             if(equalEpochs > -1)
             {
                 ssaMain.data.setNumberOfEqualSizeEpochs(equalEpochs);
@@ -357,29 +476,82 @@ public class Main {
                 ssaMain.data.setEpochType(Data.EPOCHS_EQUALLY_HEURISTIC);
             }
 
+            if(warmStartFile != null)
+            {
+                ssaMain.loadWarmStart(new java.io.File(warmStartFile));
+                if(ssaMain.parameters.getWarmStartPs() == null)
+                {
+                    return;
+                }
+            }
+
             if(randomSeed > 0)
             {
                 SSAMatrix.setRandomSeed(randomSeed);
                 ssaMain.appendToLog("Random seed set to " + randomSeed + ".");
             }
 
-            boolean ret = ssaMain.runSSA(false);
-            if(!ret)
+            TraceWriter trace = null;
+            if(traceFile != null)
             {
-                // running was not successful
-                return;
+                try
+                {
+                    trace = new TraceWriter(new java.io.File(traceFile));
+                }
+                catch(IOException e)
+                {
+                    ssaMain.appendToLog("Could not create the trace file " + traceFile + ".");
+                    return;
+                }
+                ssaMain.ssa.addIterationListener(trace);
             }
 
-            if(outputFile.toLowerCase().endsWith(".mat"))
+            try
             {
-                // output to *.mat file
-                ssaMain.saveResultMatlab(new java.io.File(outputFile));
+                if(sweep != null)
+                {
+                    if(!ssaMain.runSweep(sweep))
+                    {
+                        // running was not successful
+                        return;
+                    }
+
+                    if(outputFile.toLowerCase().endsWith(".mat"))
+                    {
+                        ssaMain.saveSweepMatlab(new java.io.File(outputFile));
+                    }
+                    else
+                    {
+                        ssaMain.saveSweepCSV(new java.io.File(outputFile));
+                    }
+                    return;
+                }
+
+                boolean ret = ssaMain.runSSA(false);
+                if(!ret)
+                {
+                    // running was not successful
+                    return;
+                }
+
+                if(outputFile.toLowerCase().endsWith(".mat"))
+                {
+                    // output to *.mat file
+                    ssaMain.saveResultMatlab(new java.io.File(outputFile));
+                }
+                else
+                {
+                    // output to multiple *.csv files, using outputFile as a prefix
+                    if(outputFile.endsWith(File.separator)) outputFile = outputFile.substring(0, outputFile.length() - 1);
+                    ssaMain.saveAllToCSV(new java.io.File(outputFile));
+                }
             }
-            else
+            finally
             {
-                // output to multiple *.csv files, using outputFile as a prefix
-                if(outputFile.endsWith(File.separator)) outputFile = outputFile.substring(0, outputFile.length() - 1);
-                ssaMain.saveAllToCSV(new java.io.File(outputFile));
+                if(trace != null)
+                {
+                    trace.close();
+                }
             }
         }
     }
@@ -452,6 +624,104 @@ public class Main {
         return true;
     }
 
+    /**
+     * Runs SSA for several numbers of stationary sources (see SSA.sweep()) in the calling
+     * thread. The results are returned by getSweepResults().
+     *
+     * @param ds numbers of stationary sources
+     * @return true, if SSA has been run successfully
+     */
+    public boolean runSweep(int ds[]) {
+        if(data.getEpochType() == Data.EPOCHS_EQUALLY && data.getNumberOfEpochs() == -1) {
+            appendToLog("ERROR: Epochs not specified");
+            return false;
+        }
+
+        ssa.setLogger(logger);
+        data.setLogger(logger);
+
+        try {
+            sweepResults = ssa.sweep(parameters, data, ds);
+        }
+        catch(RuntimeException ex) {
+            appendToLog(ex.getMessage());
+            return false;
+        }
+        catch(java.lang.OutOfMemoryError e)
+        {
+            printJavaHeapSpaceError();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a list of numbers and ranges, e.g. "1-4,6".
+     *
+     * @param s list
+     * @return numbers (null if the list could not be parsed)
+     */
+    private static int[] parseNumberList(String s)
+    {
+        LinkedList<Integer> list = new LinkedList<Integer>();
+        StringTokenizer st = new StringTokenizer(s, ",");
+        try
+        {
+            while(st.hasMoreTokens())
+            {
+                String token = st.nextToken().trim();
+                int dash = token.indexOf('-', 1);
+                if(dash > 0)
+                {
+                    int from = Integer.parseInt(token.substring(0, dash).trim());
+                    int to = Integer.parseInt(token.substring(dash + 1).trim());
+                    for(int i = from; i <= to; i++)
+                    {
+                        list.add(i);
+                    }
+                }
+                else
+                {
+                    list.add(Integer.parseInt(token));
+                }
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+        if(list.size() == 0)
+        {
+            return null;
+        }
+
+        int numbers[] = new int[list.size()];
+        for(int i = 0; i < numbers.length; i++)
+        {
+            numbers[i] = list.get(i);
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns the results of the last run of SSA (see runSSA()).
+     *
+     * @return results (null if SSA has not been run successfully yet)
+     */
+    public Results getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the results of the last sweep (see runSweep()).
+     *
+     * @return results for the numbers of stationary sources in ascending order (null if no sweep has been run successfully yet)
+     */
+    public Results[] getSweepResults() {
+        return (sweepResults == null) ? null : sweepResults.clone();
+    }
+
     /**
      * Stops the SSA algorithm.
      */
@@ -504,6 +774,45 @@ public class Main {
     public void loadTimeseriesCSV(File f) {
         appendToLog("Loading data ...");
 
+        double dataArray[][] = readCSV(f);
+        if(dataArray == null)
+        {
+            return;
+        }
+
+        if(dataArray[0].length > dataArray.length)
+        {
+            // more columns than rows => samples are in the columns
+            SSAMatrix timeSeries = new SSAMatrix(dataArray);
+            data.setTimeSeries(timeSeries, f);
+            data.setInputDataformat(Data.DATAFORMAT_CHANNELS_X_TIME);
+            data.setOutputDataformat(Data.DATAFORMAT_CHANNELS_X_TIME);
+        }
+        else
+        {
+            // more rows than columns => samples are in the rows
+            SSAMatrix timeSeries = new SSAMatrix(dataArray).transpose();
+            data.setTimeSeries(timeSeries, f);
+            data.setInputDataformat(Data.DATAFORMAT_TIME_X_CHANNELS);
+            data.setOutputDataformat(Data.DATAFORMAT_TIME_X_CHANNELS);
+        }
+
+        appendToLog("Loaded data from file " + f.getPath() + ":");
+        appendToLog("  dimensions=" + data.getNumberOfDimensions() + ",total number of samples=" + data.getTotalNumberOfSamples());
+        if(hasGUI())
+        {
+            gui.setGUIState(GUI.STATE_PARAMETRIZATION);
+        }
+    }
+
+    /**
+     * Reads a matrix from a CSV-file with one row of the matrix per line.
+     *
+     * @param f CSV-file
+     * @return rows of the matrix (null if the file could not be opened)
+     */
+    private double[][] readCSV(File f)
+    {
         // try to open csv-file
         BufferedReader br = null;
         try
@@ -513,7 +822,7 @@ public class Main {
         catch(IOException e)
         {
             appendToLog("Error opening file: " + e);
-            return;
+            return null;
         }
 
         // parse csv-file
@@ -556,29 +865,7 @@ public class Main {
             dataArray[i] = lineList.get(i);
         }
 
-        if(dataArray[0].length > dataArray.length)
-        {
-            // more columns than rows => samples are in the columns
-            SSAMatrix timeSeries = new SSAMatrix(dataArray);
-            data.setTimeSeries(timeSeries, f);
-            data.setInputDataformat(Data.DATAFORMAT_CHANNELS_X_TIME);
-            data.setOutputDataformat(Data.DATAFORMAT_CHANNELS_X_TIME);
-        }
-        else
-        {
-            // more rows than columns => samples are in the rows
-            SSAMatrix timeSeries = new SSAMatrix(dataArray).transpose();
-            data.setTimeSeries(timeSeries, f);
-            data.setInputDataformat(Data.DATAFORMAT_TIME_X_CHANNELS);
-            data.setOutputDataformat(Data.DATAFORMAT_TIME_X_CHANNELS);
-        }
-
-        appendToLog("Loaded data from file " + f.getPath() + ":");
-        appendToLog("  dimensions=" + data.getNumberOfDimensions() + ",total number of samples=" + data.getTotalNumberOfSamples());
-        if(hasGUI())
-        {
-            gui.setGUIState(GUI.STATE_PARAMETRIZATION);
-        }
+        return dataArray;
     }
 
     /**
@@ -831,6 +1118,80 @@ public class Main {
         }
     }
 
+    /**
+     * Loads the projections of a previous solution, from which the first restart starts (see
+     * SSAParameters.setWarmStart()). The file can be a MAT-file as written by saveResultMatlab()
+     * (or any MAT-file with the variables Ps and optionally Pn), or a directory with the CSV-files
+     * written by saveAllToCSV().
+     *
+     * @param f MAT-file or directory
+     */
+    public void loadWarmStart(File f) {
+        appendToLog("Loading projections for the warm start ...");
+
+        SSAMatrix Ps = null;
+        SSAMatrix Pn = null;
+        if(f.getPath().toLowerCase().endsWith(".mat"))
+        {
+            MatFileReader mfr;
+            try
+            {
+                mfr = new MatFileReader(f);
+            }
+            catch (IOException e)
+            {
+                appendToLog("Error opening file: " + e);
+                return;
+            }
+
+            Map<String, MLArray> map = mfr.getContent();
+            MLArray PsMat, PnMat;
+            MLArray resultsMat = map.get("ssa_results");
+            if(resultsMat != null && resultsMat.isStruct())
+            {
+                PsMat = ((MLStructure)resultsMat).getField("Ps");
+                PnMat = ((MLStructure)resultsMat).getField("Pn");
+            }
+            else
+            {
+                PsMat = map.get("Ps");
+                PnMat = map.get("Pn");
+            }
+            if(PsMat == null || !PsMat.isDouble())
+            {
+                appendToLog("Error: No projection found in file (i.e. no variable Ps)");
+                return;
+            }
+            Ps = new SSAMatrix(((MLDouble)PsMat).getArray());
+            if(PnMat != null && PnMat.isDouble())
+            {
+                Pn = new SSAMatrix(((MLDouble)PnMat).getArray());
+            }
+        }
+        else
+        {
+            double PsArray[][] = readCSV(new File(f, "stationary_projection.csv"));
+            if(PsArray == null)
+            {
+                return;
+            }
+            Ps = new SSAMatrix(PsArray);
+            File PnFile = new File(f, "nonstationary_projection.csv");
+            if(PnFile.exists())
+            {
+                double PnArray[][] = readCSV(PnFile);
+                if(PnArray != null)
+                {
+                    Pn = new SSAMatrix(PnArray);
+                }
+            }
+        }
+
+        parameters.setWarmStart(Ps, Pn);
+        appendToLog("Loaded projections from " + f.getPath() + ":");
+        appendToLog("  stationary sources=" + Ps.getRows() + ",dimensions=" + Ps.getColumns());
+    }
+
     /**
      * Saves a matrix to a CSV file.
      *
@@ -1034,6 +1395,100 @@ public class Main {
         appendToLog("Results successfully saved.");
     }
     
+    /**
+     * Saves the table of the objective function values of a sweep over the number of stationary
+     * sources to a CSV-file, with one row d,loss_s,loss_n,iterations_s,iterations_n per d.
+     *
+     * @param f file to save to
+     */
+    public void saveSweepCSV(File f) {
+        appendToLog("Saving...");
+
+        PrintWriter pw;
+        try
+        {
+            pw = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+        }
+        catch(IOException e)
+        {
+            appendToLog("Error opening file: " + e);
+            return;
+        }
+
+        pw.println("# d,loss_s,loss_n,iterations_s,iterations_n");
+        for(int i = 0; i < sweepResults.length; i++)
+        {
+            Results r = sweepResults[i];
+            if(r != null)
+            {
+                pw.println(r.d + "," + r.loss_s + "," + r.loss_n + "," + r.iterations_s + "," + r.iterations_n);
+            }
+        }
+
+        pw.close();
+
+        appendToLog("Saving successful.");
+    }
+
+    /**
+     * Saves the table of the objective function values of a sweep over the number of stationary
+     * sources to a MAT-file, as a structure ssa_sweep with the column vectors d, loss_s, loss_n,
+     * iterations_s and iterations_n.
+     *
+     * @param f file to save to
+     */
+    public void saveSweepMatlab(File f) {
+        appendToLog("Saving results...");
+
+        int rows = 0;
+        for(int i = 0; i < sweepResults.length; i++)
+        {
+            if(sweepResults[i] != null) rows++;
+        }
+        double table[][] = new double[5][rows];
+        for(int i = 0, j = 0; i < sweepResults.length; i++)
+        {
+            Results r = sweepResults[i];
+            if(r != null)
+            {
+                table[0][j] = r.d;
+                table[1][j] = r.loss_s;
+                table[2][j] = r.loss_n;
+                table[3][j] = r.iterations_s;
+                table[4][j] = r.iterations_n;
+                j++;
+            }
+        }
+
+        MLStructure mls = new MLStructure("ssa_sweep", new int[]{1,1});
+        String names[] = {"d", "loss_s", "loss_n", "iterations_s", "iterations_n"};
+        for(int i = 0; i < names.length; i++)
+        {
+            mls.setField(names[i], new MLDouble(names[i], table[i], rows));
+        }
+        mls.setField("description", new MLChar("description", "SSA sweep over d (" + new Date() + ")"));
+
+        LinkedList<MLArray> list = new LinkedList<MLArray>();
+        list.add(mls);
+        try
+        {
+            // check for *.mat extension
+            String filename = f.getPath();
+            if(!filename.toLowerCase().endsWith(".mat"))
+            {
+                f = new File(filename + ".mat");
+            }
+            new MatFileWriter(f, list);
+        }
+        catch(IOException e)
+        {
+            appendToLog("Error saving results: " + e);
+            return;
+        }
+
+        appendToLog("Results successfully saved.");
+    }
+
     /**
      * Appends a message to the log.
      *
@@ -207,6 +207,251 @@ public class MathFunctions
         return F;
     }*/
 
+    /**
+     * Matrix multiplication C = A*B on matrices which are stored row by row in one-dimensional arrays.
+     * No memory is allocated. C must not be the same array as A or B.
+     *
+     * @param A rows x inner matrix
+     * @param B inner x cols matrix
+     * @param C rows x cols matrix for the result
+     * @param rows number of rows of A
+     * @param inner number of columns of A
+     * @param cols number of columns of B
+     */
+    public static void mmul(double A[], double B[], double C[], int rows, int inner, int cols)
+    {
+        for(int i = 0; i < rows; i++)
+        {
+            int ci = i*cols;
+            for(int j = 0; j < cols; j++)
+            {
+                C[ci + j] = 0.0;
+            }
+            for(int k = 0; k < inner; k++)
+            {
+                double a = A[i*inner + k];
+                if(a == 0.0)
+                {
+                    continue;
+                }
+                int bk = k*cols;
+                for(int j = 0; j < cols; j++)
+                {
+                    C[ci + j] += a*B[bk + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C = A*B as above, with B in single precision. The products are
+     * computed and summed up in double precision.
+     *
+     * @param A rows x inner matrix
+     * @param B inner x cols matrix (single precision)
+     * @param C rows x cols matrix for the result
+     * @param rows number of rows of A
+     * @param inner number of columns of A
+     * @param cols number of columns of B
+     */
+    public static void mmul(double A[], float B[], double C[], int rows, int inner, int cols)
+    {
+        for(int i = 0; i < rows; i++)
+        {
+            int ci = i*cols;
+            for(int j = 0; j < cols; j++)
+            {
+                C[ci + j] = 0.0;
+            }
+            for(int k = 0; k < inner; k++)
+            {
+                double a = A[i*inner + k];
+                if(a == 0.0)
+                {
+                    continue;
+                }
+                int bk = k*cols;
+                for(int j = 0; j < cols; j++)
+                {
+                    C[ci + j] += a*B[bk + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C = A*B' on matrices which are stored row by row in one-dimensional arrays.
+     * No memory is allocated. C must not be the same array as A or B.
+     *
+     * @param A rows x inner matrix
+     * @param B cols x inner matrix
+     * @param C rows x cols matrix for the result
+     * @param rows number of rows of A
+     * @param inner number of columns of A and B
+     * @param cols number of rows of B
+     */
+    public static void mmulTransposed(double A[], double B[], double C[], int rows, int inner, int cols)
+    {
+        for(int i = 0; i < rows; i++)
+        {
+            int ai = i*inner;
+            for(int j = 0; j < cols; j++)
+            {
+                int bj = j*inner;
+                double sum = 0.0;
+                for(int k = 0; k < inner; k++)
+                {
+                    sum += A[ai + k]*B[bj + k];
+                }
+                C[i*cols + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Calculates the sum of the element-wise products of two vectors (or matrices stored in arrays).
+     *
+     * @param a first vector
+     * @param b second vector
+     * @return scalar product
+     */
+    public static double dot(double a[], double b[])
+    {
+        double sum = 0.0;
+        for(int i = 0; i < a.length; i++)
+        {
+            sum += a[i]*b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the Cholesky decomposition A = L*L' of the upper left d x d block of a symmetric,
+     * positive definite matrix, which is stored row by row with n columns. No memory is allocated.
+     *
+     * @param A matrix (only the lower triangle of the upper left block is read)
+     * @param n number of columns of A
+     * @param d size of the block
+     * @param L d x d array for the lower triangular factor (the upper triangle is set to zero).
+     *          If the block is not positive definite, a zero appears on the diagonal.
+     *          If n == d, L may be the same array as A.
+     */
+    public static void cholesky(double A[], int n, int d, double L[])
+    {
+        for(int i = 0; i < d; i++)
+        {
+            for(int j = 0; j <= i; j++)
+            {
+                double sum = A[i*n + j];
+                for(int k = 0; k < j; k++)
+                {
+                    sum -= L[i*d + k]*L[j*d + k];
+                }
+                if(i == j)
+                {
+                    L[i*d + i] = Math.sqrt(Math.max(sum, 0.0));
+                }
+                else
+                {
+                    L[i*d + j] = sum / L[j*d + j];
+                }
+            }
+            for(int j = i + 1; j < d; j++)
+            {
+                L[i*d + j] = 0.0;
+            }
+        }
+    }
+
+    /**
+     * Factorizes a batch of symmetric, positive definite d x d matrices C_i = L_i*L_i' and computes
+     * their log-determinants and (optionally) the products inv(C_i)*B_i by forward and back
+     * substitution, i.e. without forming the inverses. Every matrix is factorized only once and no
+     * memory is allocated. All matrices are stored row by row in one-dimensional arrays.
+     *
+     * The log-determinant is computed as a sum of logarithms, so it does not under- or overflow
+     * for large d. If a matrix is not positive definite, its log-determinant is -Infinity.
+     *
+     * @param C array of d x d matrices; matrix i is overwritten by its Cholesky factor L_i
+     * @param B array of d x m matrices; matrix i is overwritten by inv(C_i)*B_i (if B == null, only the log-determinants are computed)
+     * @param from index of the first matrix
+     * @param to index after the last matrix
+     * @param d number of rows and columns of the matrices C_i
+     * @param m number of columns of the matrices B_i
+     * @param logdet array for the log-determinants of the matrices C_i
+     */
+    public static void choleskySolve(double C[][], double B[][], int from, int to, int d, int m, double logdet[])
+    {
+        for(int i = from; i < to; i++)
+        {
+            double L[] = C[i];
+            cholesky(L, d, d, L);
+            double sum = 0.0;
+            for(int j = 0; j < d; j++)
+            {
+                sum += Math.log(L[j*d + j]);
+            }
+            logdet[i] = 2.0*sum;
+
+            if(B == null)
+            {
+                continue;
+            }
+            solveCholesky(L, B[i], d, m);
+        }
+    }
+
+    /**
+     * Solves L*L'*X = B for X by forward and back substitution, where L is a lower triangular
+     * Cholesky factor. No memory is allocated.
+     *
+     * @param L d x d lower triangular matrix (row by row)
+     * @param X d x m matrix B (row by row), which is overwritten by the solution
+     * @param d number of rows and columns of L
+     * @param m number of columns of X
+     */
+    public static void solveCholesky(double L[], double X[], int d, int m)
+    {
+        // solve L*Y = B
+        for(int r = 0; r < d; r++)
+        {
+            int xr = r*m;
+            for(int k = 0; k < r; k++)
+            {
+                double l = L[r*d + k];
+                int xk = k*m;
+                for(int c = 0; c < m; c++)
+                {
+                    X[xr + c] -= l*X[xk + c];
+                }
+            }
+            double pivot = L[r*d + r];
+            for(int c = 0; c < m; c++)
+            {
+                X[xr + c] /= pivot;
+            }
+        }
+        // solve L'*X = Y
+        for(int r = d - 1; r >= 0; r--)
+        {
+            int xr = r*m;
+            for(int k = r + 1; k < d; k++)
+            {
+                double l = L[k*d + r];
+                int xk = k*m;
+                for(int c = 0; c < m; c++)
+                {
+                    X[xr + c] -= l*X[xk + c];
+                }
+            }
+            double pivot = L[r*d + r];
+            for(int c = 0; c < m; c++)
+            {
+                X[xr + c] /= pivot;
+            }
+        }
+    }
+
     /**
      * Calculates the whitening matrix C^(-1/2) given a covariance matrix C.
      *
@@ -231,12 +476,139 @@ public class MathFunctions
      * @return random rotation matrix
      */
     public static SSAMatrix randRot(int size)
+    {
+        return randRot(size, SSAParameters.RETRACTION_EXPM);
+    }
+
+    /**
+     * Generates a random rotation matrix from a random antisymmetric matrix, using the given
+     * retraction.
+     *
+     * @param size size of rotation matrix
+     * @param retraction SSAParameters.RETRACTION_EXPM or SSAParameters.RETRACTION_CAYLEY
+     * @return random rotation matrix
+     */
+    public static SSAMatrix randRot(int size, int retraction)
     {
         SSAMatrix M = SSAMatrix.rand(size, size).subi(0.5);
 
         M.subi(M.transpose());
 
-        return M.expm();
+        return retract(M, retraction);
+    }
+
+    /**
+     * Generates a random rotation matrix using the given random number generator.
+     *
+     * @param size size of rotation matrix
+     * @param rng random number generator
+     * @return random rotation matrix
+     */
+    public static SSAMatrix randRot(int size, java.util.Random rng)
+    {
+        return randRot(size, rng, SSAParameters.RETRACTION_EXPM);
+    }
+
+    /**
+     * Generates a random rotation matrix from a random antisymmetric matrix, using the
+     * given random number generator and retraction.
+     *
+     * @param size size of rotation matrix
+     * @param rng random number generator
+     * @param retraction SSAParameters.RETRACTION_EXPM or SSAParameters.RETRACTION_CAYLEY
+     * @return random rotation matrix
+     */
+    public static SSAMatrix randRot(int size, java.util.Random rng, int retraction)
+    {
+        SSAMatrix M = SSAMatrix.rand(size, size, rng).subi(0.5);
+
+        M.subi(M.transpose());
+
+        return retract(M, retraction);
+    }
+
+    /**
+     * Generates an orthogonal matrix which is uniformly distributed w.r.t. the Haar measure, by
+     * orthonormalizing the rows of a matrix with standard normal entries (i.e. the Q factor of
+     * its QR decomposition, with the signs chosen such that R has a positive diagonal). Unlike
+     * randRot(), whose distribution is concentrated around the identity, the subspace spanned by
+     * any d rows is uniformly distributed as well.
+     *
+     * @param size size of the matrix
+     * @param rng random number generator
+     * @return random orthogonal matrix
+     */
+    public static SSAMatrix randOrth(int size, java.util.Random rng)
+    {
+        double Q[][] = new double[size][size];
+        for(int i = 0; i < size; i++)
+        {
+            for(int j = 0; j < size; j++)
+            {
+                Q[i][j] = rng.nextGaussian();
+            }
+            // modified Gram-Schmidt, applied twice for numerical orthogonality
+            for(int pass = 0; pass < 2; pass++)
+            {
+                for(int k = 0; k < i; k++)
+                {
+                    double dot = 0;
+                    for(int j = 0; j < size; j++)
+                    {
+                        dot += Q[i][j]*Q[k][j];
+                    }
+                    for(int j = 0; j < size; j++)
+                    {
+                        Q[i][j] -= dot*Q[k][j];
+                    }
+                }
+            }
+            double norm = 0;
+            for(int j = 0; j < size; j++)
+            {
+                norm += Q[i][j]*Q[i][j];
+            }
+            norm = Math.sqrt(norm);
+            for(int j = 0; j < size; j++)
+            {
+                Q[i][j] /= norm;
+            }
+        }
+        return new SSAMatrix(Q);
+    }
+
+    /**
+     * Maps an antisymmetric matrix to a rotation matrix.
+     *
+     * @param M antisymmetric matrix
+     * @param retraction SSAParameters.RETRACTION_EXPM (exp(M)) or SSAParameters.RETRACTION_CAYLEY (see cayley())
+     * @return rotation matrix
+     */
+    public static SSAMatrix retract(SSAMatrix M, int retraction)
+    {
+        switch(retraction)
+        {
+            case SSAParameters.RETRACTION_EXPM:
+                return M.expm();
+            case SSAParameters.RETRACTION_CAYLEY:
+                return cayley(M);
+            default:
+                throw new IllegalArgumentException("Unknown retraction");
+        }
+    }
+
+    /**
+     * Calculates the Cayley transform inv(I - M/2)*(I + M/2) of an antisymmetric matrix, which
+     * is a rotation matrix. For small M, it agrees with exp(M) up to terms of third order.
+     *
+     * @param M antisymmetric matrix
+     * @return rotation matrix
+     */
+    public static SSAMatrix cayley(SSAMatrix M)
+    {
+        SSAMatrix I = SSAMatrix.eye(M.getRows());
+        SSAMatrix half = M.mul(0.5);
+        return SSAMatrix.solve(I.sub(half), I.add(half));
     }
 }
 
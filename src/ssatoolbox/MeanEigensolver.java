@@ -0,0 +1,573 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Solves SSA with the means only, which is an eigenvalue problem: the stationary subspace is
+ * spanned by the eigenvectors of H = sum_i w_i*mu_i*mu_i' (with the centered means mu_i) to the
+ * d smallest eigenvalues. With the rows A_i = sqrt(w_i)*mu_i', H = A'*A has at most rank K
+ * (the number of epochs), and only one of the two subspaces has to be computed, since the other
+ * one is its orthogonal complement. Depending on the sizes, the solver
+ *
+ *  - computes the eigenvectors of the K x K matrix A*A', from which the eigenvectors of H to
+ *    the non-zero eigenvalues follow (if K is at most n/2),
+ *  - computes the n - d largest eigenvectors of H or the d smallest ones (as the largest ones of
+ *    the inverse of H, by a Cholesky factorization) with LOBPCG, if that number is small
+ *    compared to n, or
+ *  - computes all eigenvectors of H.
+ *
+ * H is computed with one product A'*A, of which only the upper triangle is computed. In the
+ * first two cases, the other subspace is completed by Householder reflections, which takes
+ * O(n^2*m) operations for m computed eigenvectors; the rows of Ps and Pn are then orthonormal
+ * bases of the subspaces, but not necessarily eigenvectors of H.
+ *
+ * All matrices are stored row by row in one-dimensional arrays.
+ */
+class MeanEigensolver
+{
+    /** LOBPCG is used if the number of computed eigenvectors is at most n/LOBPCG_RATIO */
+    private static final int LOBPCG_RATIO = 16;
+
+    /** Maximum number of LOBPCG iterations (if it does not converge, all eigenvectors are computed) */
+    private static final int LOBPCG_MAXITER = 1000;
+
+    /** LOBPCG stops if all residuals are below this tolerance (relative to the largest eigenvalue) */
+    private static final double LOBPCG_TOLERANCE = 1e-10;
+
+    /** Eigenvalues of A*A' below this tolerance (relative to the largest one) are treated as zero */
+    private static final double RANK_TOLERANCE = 1e-12;
+
+    /** Shift (relative to the trace of H) which makes H positive definite for the Cholesky factorization */
+    private static final double SHIFT = 1e-12;
+
+    /** Number of dimensions */
+    private final int n;
+
+    /** Number of epochs */
+    private final int epochs;
+
+    /** Weighted centered means, one epoch per row (epochs x n) */
+    private final double A[];
+
+    /** Trace of H */
+    private final double trace;
+
+    /** Orthogonal demixing matrix; the first d rows span the stationary subspace */
+    double B[];
+
+    /** Sums of the eigenvalues of H in the stationary and the non-stationary subspace */
+    double lossS, lossN;
+
+    /**
+     * Prepares the solver for the given data.
+     *
+     * @param data class containing the data (the epoch means have to be computed already)
+     */
+    MeanEigensolver(Data data)
+    {
+        n = data.getNumberOfReducedDimensions();
+        epochs = data.mu.length;
+        A = new double[epochs*n];
+        double t = 0.0;
+        for(int i = 0; i < epochs; i++)
+        {
+            double w = Math.sqrt((double)data.epochSizes[i]);
+            for(int a = 0; a < n; a++)
+            {
+                double v = w*(data.mu[i].get(a, 0) - data.muall.get(a, 0));
+                A[i*n + a] = v;
+                t += v*v;
+            }
+        }
+        trace = t;
+    }
+
+    /**
+     * Computes the demixing matrix and the losses for the given number of stationary sources.
+     *
+     * @param d number of stationary sources
+     */
+    void solve(int d)
+    {
+        if(2*epochs <= n)
+        {
+            solveGram(d);
+            return;
+        }
+
+        double H[] = gram();
+        int m = Math.min(d, n - d);
+        if(LOBPCG_RATIO*m <= n)
+        {
+            // compute the smaller one of the two subspaces
+            double X[];
+            if(m < d)
+            {
+                // the n - d largest eigenvectors of H
+                X = lobpcg(H, m, false);
+            }
+            else
+            {
+                // the d smallest eigenvectors of H are the largest ones of inv(H + shift*I)
+                X = lobpcg(shiftedCholesky(H), m, true);
+            }
+            if(X != null)
+            {
+                setSubspace(X, m, (m < d) ? (n - d) : 0, d);
+                return;
+            }
+        }
+
+        // all eigenvectors (in ascending order of the eigenvalues)
+        SSAMatrix E[] = SSAWorkspace.toMatrix(H, n, n).symmetricEigenvectors();
+        B = SSAWorkspace.toArray(E[0].transpose());
+        SSAMatrix diag = E[1].diag();
+        lossS = diag.getRange(0, d, 0, 1).sum();
+        lossN = diag.getRange(d, n, 0, 1).sum();
+    }
+
+    /**
+     * Computes the eigenvectors of H to the non-zero eigenvalues from the ones of A*A'.
+     */
+    private void solveGram(int d)
+    {
+        double G[] = new double[epochs*epochs];
+        MathFunctions.mmulTransposed(A, A, G, epochs, n, epochs);
+        SSAMatrix E[] = SSAWorkspace.toMatrix(G, epochs, epochs).symmetricEigenvectors();
+
+        // eigenvalues in ascending order, the largest one is the last one
+        double lambdaMax = E[1].get(epochs - 1, epochs - 1);
+        int m = 0;
+        double U[] = new double[Math.min(epochs, n - d)*n];
+        for(int j = epochs - 1; j >= 0 && m < n - d; j--)
+        {
+            double lambda = E[1].get(j, j);
+            if(lambda <= RANK_TOLERANCE*lambdaMax)
+            {
+                break;
+            }
+            // u = A'*v/sqrt(lambda)
+            double s = 1.0/Math.sqrt(lambda);
+            for(int i = 0; i < epochs; i++)
+            {
+                double v = s*E[0].get(i, j);
+                for(int a = 0; a < n; a++)
+                {
+                    U[m*n + a] += v*A[i*n + a];
+                }
+            }
+            m++;
+        }
+        setSubspace(U, m, n - d, d);
+    }
+
+    /**
+     * Sets B such that the first m rows of the given rows U are the first rows of the
+     * non-stationary (if nonStationary > 0) or the stationary subspace, and computes the losses.
+     *
+     * @param U m x n matrix with orthonormal rows
+     * @param m number of rows of U
+     * @param nonStationary number of rows of Pn if U belongs to the non-stationary subspace (0 otherwise)
+     * @param d number of stationary sources
+     */
+    private void setSubspace(double U[], int m, int nonStationary, int d)
+    {
+        double Q[] = complete(U, m);
+        if(nonStationary > 0)
+        {
+            // Q = [Pn; Ps] -> B = [Ps; Pn]
+            B = new double[n*n];
+            System.arraycopy(Q, nonStationary*n, B, 0, d*n);
+            System.arraycopy(Q, 0, B, d*n, nonStationary*n);
+        }
+        else
+        {
+            B = Q;
+        }
+
+        // loss_s = trace(Ps*H*Ps') = ||A*Ps'||^2; H has no mass outside of both subspaces
+        double APs[] = new double[epochs*d];
+        MathFunctions.mmulTransposed(A, B, APs, epochs, n, d);
+        lossS = MathFunctions.dot(APs, APs);
+        lossN = trace - lossS;
+    }
+
+    /**
+     * Computes H = A'*A; the inner loop only runs over the upper triangle.
+     */
+    private double[] gram()
+    {
+        double H[] = new double[n*n];
+        for(int i = 0; i < epochs; i++)
+        {
+            int ai = i*n;
+            for(int a = 0; a < n; a++)
+            {
+                double v = A[ai + a];
+                if(v == 0.0)
+                {
+                    continue;
+                }
+                int ha = a*n;
+                for(int b = a; b < n; b++)
+                {
+                    H[ha + b] += v*A[ai + b];
+                }
+            }
+        }
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < a; b++)
+            {
+                H[a*n + b] = H[b*n + a];
+            }
+        }
+        return H;
+    }
+
+    /**
+     * Computes the Cholesky factor of H + shift*I.
+     *
+     * @return lower triangular factor (or null, if the matrix is not numerically positive definite)
+     */
+    private double[] shiftedCholesky(double H[])
+    {
+        double L[] = H.clone();
+        double shift = SHIFT*trace;
+        for(int a = 0; a < n; a++)
+        {
+            L[a*n + a] += shift;
+        }
+        MathFunctions.cholesky(L, n, n, L);
+        for(int a = 0; a < n; a++)
+        {
+            if(!(L[a*n + a] > 0.0))
+            {
+                return null;
+            }
+        }
+        return L;
+    }
+
+    /**
+     * Computes the eigenvectors to the m largest eigenvalues of a symmetric positive
+     * semi-definite matrix by the locally optimal block preconditioned conjugate gradient method
+     * (without preconditioner). In each iteration, the Ritz vectors in the span of the current
+     * vectors X, their residuals R and the previous search directions P become the new vectors.
+     * The start vectors are drawn with a fixed seed, so the result is deterministic.
+     *
+     * @param Op n x n matrix H, or the Cholesky factor L of H if inverse is set (then the
+     *           eigenvectors of inv(L*L') are computed)
+     * @param m number of eigenvectors
+     * @param inverse Op is a Cholesky factor
+     * @return m x n matrix with the eigenvectors in its rows, in descending order of the
+     *         eigenvalues (or null, if Op is null or LOBPCG did not converge)
+     */
+    private double[] lobpcg(double Op[], int m, boolean inverse)
+    {
+        if(Op == null)
+        {
+            return null;
+        }
+
+        // basis [X; R; P] with its product with the operator
+        double S[] = new double[3*m*n];
+        double OS[] = new double[3*m*n];
+        double buf[] = inverse ? new double[3*m*n] : null;
+        double X[] = new double[m*n];
+        double P[] = new double[m*n];
+        double R[] = new double[m*n];
+        Random rng = new Random(0);
+        for(int l = 0; l < m*n; l++)
+        {
+            S[l] = rng.nextGaussian();
+        }
+        int k = orthonormalize(S, m);
+        int p = 0;
+        for(int it = 0; it < LOBPCG_MAXITER; it++)
+        {
+            // Rayleigh-Ritz: T = S*Op*S'
+            apply(Op, inverse, S, OS, buf, k);
+            double T[][] = new double[k][k];
+            for(int a = 0; a < k; a++)
+            {
+                for(int b = a; b < k; b++)
+                {
+                    double v = 0.5*(rowDot(S, a, OS, b) + rowDot(S, b, OS, a));
+                    T[a][b] = v;
+                    T[b][a] = v;
+                }
+            }
+            SSAMatrix E[] = new SSAMatrix(T).symmetricEigenvectors();
+
+            // new X and P (the part of the new X which is not in the old one) and the residuals
+            double maxResidual = 0.0;
+            double lambdaMax = E[1].get(k - 1, k - 1);
+            for(int j = 0; j < m; j++)
+            {
+                int col = k - 1 - j;
+                double lambda = E[1].get(col, col);
+                for(int c = 0; c < n; c++)
+                {
+                    double x = 0.0, px = 0.0, ox = 0.0;
+                    for(int l = 0; l < k; l++)
+                    {
+                        double v = E[0].get(l, col);
+                        x += v*S[l*n + c];
+                        ox += v*OS[l*n + c];
+                        if(l >= m)
+                        {
+                            px += v*S[l*n + c];
+                        }
+                    }
+                    X[j*n + c] = x;
+                    P[j*n + c] = px;
+                    R[j*n + c] = ox - lambda*x;
+                }
+                maxResidual = Math.max(maxResidual, Math.sqrt(rowDot(R, j, R, j)));
+            }
+            if(maxResidual <= LOBPCG_TOLERANCE*lambdaMax)
+            {
+                return X;
+            }
+            p = (it > 0) ? m : 0;
+
+            // next basis
+            System.arraycopy(X, 0, S, 0, m*n);
+            System.arraycopy(R, 0, S, m*n, m*n);
+            System.arraycopy(P, 0, S, 2*m*n, p*n);
+            k = orthonormalize(S, 2*m + p);
+        }
+        return null;
+    }
+
+    /**
+     * Computes the products of the operator with the first k rows of S.
+     *
+     * @param Op n x n matrix or Cholesky factor (see lobpcg())
+     * @param inverse Op is a Cholesky factor
+     * @param S matrix with the vectors in its rows
+     * @param OS matrix for the products
+     * @param buf buffer for the transposed vectors (if inverse is set)
+     * @param k number of vectors
+     */
+    private void apply(double Op[], boolean inverse, double S[], double OS[], double buf[], int k)
+    {
+        if(!inverse)
+        {
+            // the rows of S*Op are the products, since Op is symmetric
+            MathFunctions.mmul(S, Op, OS, k, n, n);
+            return;
+        }
+        for(int l = 0; l < k; l++)
+        {
+            for(int c = 0; c < n; c++)
+            {
+                buf[c*k + l] = S[l*n + c];
+            }
+        }
+        MathFunctions.solveCholesky(Op, buf, n, k);
+        for(int l = 0; l < k; l++)
+        {
+            for(int c = 0; c < n; c++)
+            {
+                OS[l*n + c] = buf[c*k + l];
+            }
+        }
+    }
+
+    /**
+     * Orthonormalizes the given rows by the modified Gram-Schmidt method (twice), dropping
+     * rows which are (nearly) linearly dependent on the previous ones.
+     *
+     * @param S matrix whose rows are orthonormalized in place
+     * @param rows number of rows
+     * @return number of remaining rows (which are moved to the front)
+     */
+    private int orthonormalize(double S[], int rows)
+    {
+        int k = 0;
+        for(int j = 0; j < rows; j++)
+        {
+            if(j != k)
+            {
+                System.arraycopy(S, j*n, S, k*n, n);
+            }
+            double before = Math.sqrt(rowDot(S, k, S, k));
+            for(int pass = 0; pass < 2; pass++)
+            {
+                for(int l = 0; l < k; l++)
+                {
+                    double v = rowDot(S, l, S, k);
+                    for(int c = 0; c < n; c++)
+                    {
+                        S[k*n + c] -= v*S[l*n + c];
+                    }
+                }
+            }
+            double after = Math.sqrt(rowDot(S, k, S, k));
+            if(after > 1e-10*before)
+            {
+                for(int c = 0; c < n; c++)
+                {
+                    S[k*n + c] /= after;
+                }
+                k++;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Scalar product of row a of S and row b of T.
+     */
+    private double rowDot(double S[], int a, double T[], int b)
+    {
+        double v = 0.0;
+        for(int c = 0; c < n; c++)
+        {
+            v += S[a*n + c]*T[b*n + c];
+        }
+        return v;
+    }
+
+    /**
+     * Completes m orthonormal rows to an orthogonal matrix by Householder reflections: the
+     * reflections which triangularize U' give Q = H_1*...*H_m, whose first m columns span the
+     * rows of U (up to the signs).
+     *
+     * @param U m x n matrix with orthonormal rows
+     * @param m number of rows of U
+     * @return n x n orthogonal matrix whose first m rows are the rows of U (up to the signs)
+     */
+    private double[] complete(double U[], int m)
+    {
+        // the reflections are computed on the rows of a copy of U (i.e. on the columns of U')
+        double V[] = U.clone();
+        double refl[][] = new double[m][];
+        for(int j = 0; j < m; j++)
+        {
+            double x = 0.0;
+            for(int c = j; c < n; c++)
+            {
+                x += V[j*n + c]*V[j*n + c];
+            }
+            x = Math.sqrt(x);
+            if(x == 0.0)
+            {
+                continue;
+            }
+            double v[] = new double[n];
+            double alpha = (V[j*n + j] > 0) ? -x : x;
+            for(int c = j; c < n; c++)
+            {
+                v[c] = V[j*n + c];
+            }
+            v[j] -= alpha;
+            double vnorm = 0.0;
+            for(int c = j; c < n; c++)
+            {
+                vnorm += v[c]*v[c];
+            }
+            vnorm = Math.sqrt(vnorm);
+            if(vnorm == 0.0)
+            {
+                continue;
+            }
+            for(int c = j; c < n; c++)
+            {
+                v[c] /= vnorm;
+            }
+            refl[j] = v;
+            for(int l = j + 1; l < m; l++)
+            {
+                double s = 0.0;
+                for(int c = j; c < n; c++)
+                {
+                    s += v[c]*V[l*n + c];
+                }
+                for(int c = j; c < n; c++)
+                {
+                    V[l*n + c] -= 2.0*s*v[c];
+                }
+            }
+        }
+
+        // Q = H_1*(...*(H_m*I)), computed row by row
+        double Q[] = new double[n*n];
+        for(int a = 0; a < n; a++)
+        {
+            Q[a*n + a] = 1.0;
+        }
+        double s[] = new double[n];
+        for(int j = m - 1; j >= 0; j--)
+        {
+            double v[] = refl[j];
+            if(v == null)
+            {
+                continue;
+            }
+            Arrays.fill(s, 0.0);
+            for(int r = j; r < n; r++)
+            {
+                double vr = v[r];
+                for(int c = 0; c < n; c++)
+                {
+                    s[c] += vr*Q[r*n + c];
+                }
+            }
+            for(int r = j; r < n; r++)
+            {
+                double vr = 2.0*v[r];
+                for(int c = 0; c < n; c++)
+                {
+                    Q[r*n + c] -= vr*s[c];
+                }
+            }
+        }
+
+        // the columns of Q are the rows of the result
+        double Qt[] = new double[n*n];
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < n; b++)
+            {
+                Qt[b*n + a] = Q[a*n + b];
+            }
+        }
+        return Qt;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.Random;
+
+/**
+ * Strategy for minimizing the SSA objective function over the rotations of the demixing matrix.
+ * An optimizer starts at the current point of a workspace and moves it by accepting rotations
+ * exp(M) (or their Cayley transforms) until it converges. A new instance is created for every
+ * run, so implementations may keep state between iterations.
+ *
+ * The objective function is normalized as in SSA.normalizeObjectiveFunction(), and its sign is
+ * changed for the optimization of the n-sources, so the optimizers always minimize. Gradients are
+ * antisymmetric n x n matrices w.r.t. the metric <X, Y> = trace(X'*Y)/2.
+ */
+public abstract class Optimizer
+{
+    // constants for line-search
+    protected static final double LSALPHA = 0.5*(0.01+0.3);
+    protected static final double LSBETA = 0.4;
+    protected static final int LSTRIALS = 10;
+    protected static final double RDEC_THRESHOLD = 1e-8;
+
+    /** Workspace of the current run */
+    protected SSAWorkspace ws;
+
+    /** Number of dimensions */
+    protected int n;
+
+    /** Evaluate the line search along the decomposed search direction */
+    private final boolean geodesic;
+
+    // normalization of the objective function
+    protected int k;
+    /** -1 if the objective function is maximized, 1 otherwise */
+    protected double sign;
+
+    /** Value of the objective function (not normalized) of the last call of evaluateGradient() */
+    protected double rawLoss;
+
+    /** Step size of the last line search */
+    protected double step;
+
+    /** Scratch matrix for the line search */
+    private double M[];
+
+    // step sizes and losses of a batch of the speculative line search
+    private double batchSteps[];
+    private double batchLosses[];
+
+    /** Maximum number of iterations of the run */
+    protected int maxIterations;
+
+    /** Random number generator for stochastic optimizers (null: seeded from SSAMatrix.nextRandomSeed()) */
+    protected Random random;
+
+    /** Listener for the iterations (if null, no timings are measured and no events are created) */
+    protected IterationListener listener;
+    /** Index of the restart and number of iterations of the restart before this run (for the events) */
+    protected int restart;
+    protected int firstIteration;
+
+    // deadline of the run in terms of System.nanoTime() (only if hasDeadline is set) and whether
+    // the run has been stopped by it
+    protected boolean hasDeadline = false;
+    protected long deadline;
+    protected boolean deadlineReached = false;
+
+    // trials and timings of the line search and of the gradient in the current iteration (only
+    // measured if there is a listener)
+    protected int trials;
+    protected long gradientTime;
+    protected long lineSearchTime;
+
+    // outcome of the run
+    protected double loss;
+    protected int iterations;
+    protected boolean converged;
+
+    /**
+     * Creates a new optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    protected Optimizer(SSAParameters par)
+    {
+        geodesic = par.isGeodesicLineSearch();
+    }
+
+    /**
+     * Creates the optimizer which has been selected in the parameters.
+     *
+     * @param par class containing the SSA parameters
+     * @return new optimizer
+     */
+    public static Optimizer create(SSAParameters par)
+    {
+        switch(par.getOptimizer())
+        {
+            case SSAParameters.OPTIMIZER_CG:
+                return new ConjugateGradientOptimizer(par);
+            case SSAParameters.OPTIMIZER_LBFGS:
+                return new LBFGSOptimizer(par);
+            case SSAParameters.OPTIMIZER_TRUST_REGION:
+                return new TrustRegionOptimizer(par);
+            case SSAParameters.OPTIMIZER_STOCHASTIC:
+                return new StochasticOptimizer(par);
+            case SSAParameters.OPTIMIZER_GIVENS:
+                return new GivensOptimizer(par);
+            default:
+                throw new IllegalArgumentException("Unknown optimizer");
+        }
+    }
+
+    /**
+     * Sets the random number generator which stochastic optimizers use (e.g. to draw the
+     * mini-batches). Deterministic optimizers ignore it.
+     *
+     * @param random random number generator (if null, a generator is seeded from SSAMatrix.nextRandomSeed())
+     */
+    public void setRandom(Random random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Sets the listener which is called after every iteration.
+     *
+     * @param listener listener (null: no events)
+     * @param restart index of the restart
+     * @param firstIteration number of iterations of the restart before this run
+     */
+    public void setIterationListener(IterationListener listener, int restart, int firstIteration)
+    {
+        this.listener = listener;
+        this.restart = restart;
+        this.firstIteration = firstIteration;
+    }
+
+    /**
+     * Sets a deadline for the run. The optimization stops at the first iteration which starts
+     * after the deadline; the first iteration is always done, so the loss at the final point is
+     * known.
+     *
+     * @param deadline deadline in terms of System.nanoTime()
+     */
+    public void setDeadline(long deadline)
+    {
+        this.hasDeadline = true;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns whether the run has been stopped by the deadline.
+     *
+     * @return true, if the deadline has been reached before convergence
+     */
+    public boolean isDeadlineReached()
+    {
+        return deadlineReached;
+    }
+
+    /**
+     * Minimizes the objective function, starting from the current point of the workspace. When the
+     * method returns, the current point of the workspace is the solution.
+     *
+     * @param ws workspace containing the data and the initial demixing matrix
+     * @param k degrees of freedom of the chi^2 distribution (for the normalization)
+     * @param maximize set this to true to maximize the objective function (optimization of the n-sources)
+     */
+    public void minimize(SSAWorkspace ws, int k, boolean maximize)
+    {
+        minimize(ws, k, maximize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Minimizes the objective function, starting from the current point of the workspace, for at
+     * most the given number of iterations. When the method returns, the current point of the
+     * workspace is the last accepted point, so the optimization can be continued later by another
+     * call (the internal state of the optimizer, e.g. the conjugate direction, is not kept).
+     *
+     * @param ws workspace containing the data and the initial demixing matrix
+     * @param k degrees of freedom of the chi^2 distribution (for the normalization)
+     * @param maximize set this to true to maximize the objective function (optimization of the n-sources)
+     * @param maxIterations maximum number of iterations
+     */
+    public void minimize(SSAWorkspace ws, int k, boolean maximize, int maxIterations)
+    {
+        this.ws = ws;
+        this.maxIterations = maxIterations;
+        this.n = ws.getNumberOfDimensions();
+        this.k = k;
+        this.sign = maximize ? -1.0 : 1.0;
+        M = new double[n*n];
+        loss = 0.0;
+        iterations = 0;
+        converged = false;
+
+        run();
+    }
+
+    /**
+     * Runs the optimization on the workspace for at most maxIterations iterations and sets the
+     * loss (at the last accepted point), the number of iterations and whether the optimization
+     * has converged.
+     */
+    protected abstract void run();
+
+    /**
+     * Returns the (normalized) objective function value of the solution. For the optimization of
+     * the n-sources, this is the negative objective function value.
+     *
+     * @return loss
+     */
+    public double getLoss()
+    {
+        return loss;
+    }
+
+    /**
+     * Returns the number of iterations.
+     *
+     * @return number of iterations
+     */
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    /**
+     * Returns whether the optimization has converged.
+     *
+     * @return true, if the optimization has converged
+     */
+    public boolean isConverged()
+    {
+        return converged;
+    }
+
+    /**
+     * Normalizes a value of the objective function as computed by the workspace.
+     */
+    protected double normalize(double rawLoss)
+    {
+        return sign*(Math.sqrt(2.0 * rawLoss) - Math.sqrt(2.0*((double)k) - 1.0));
+    }
+
+    /**
+     * Evaluates the objective function and its gradient at the current point. The gradient
+     * is normalized in place in the array returned by ws.getGradient().
+     *
+     * @return normalized objective function value
+     */
+    protected double evaluateGradient()
+    {
+        long start = (listener != null) ? System.nanoTime() : 0;
+        rawLoss = ws.evaluate(null, true);
+        double grad[] = ws.getGradient();
+        // normalize gradient; optimize n-sources? simply change sign of loss and gradient
+        double gradScale = sign / Math.sqrt(2.0*rawLoss);
+        for(int j = 0; j < grad.length; j++)
+        {
+            grad[j] *= gradScale;
+        }
+        if(listener != null)
+        {
+            gradientTime = System.nanoTime() - start;
+        }
+        return normalize(rawLoss);
+    }
+
+    /**
+     * Returns whether the deadline (if any) has passed. The optimizers check it at the start of
+     * every iteration but the first one.
+     *
+     * @return true, if the deadline has passed
+     */
+    protected boolean pastDeadline()
+    {
+        if(hasDeadline && System.nanoTime() - deadline >= 0)
+        {
+            deadlineReached = true;
+        }
+        return deadlineReached;
+    }
+
+    /**
+     * Notifies the listener (if any) about the iteration. The gradient norm is computed from the
+     * gradient in the workspace, i.e. the gradient of the last call of evaluateGradient().
+     *
+     * @param iteration index of the iteration in this run
+     * @param loss loss at the start of the iteration
+     * @param step step size of the last trial step
+     */
+    protected void iterationDone(int iteration, double loss, double step)
+    {
+        if(listener == null)
+        {
+            return;
+        }
+        double grad[] = ws.getGradient();
+        listener.iterationDone(new IterationEvent(restart, sign < 0, firstIteration + iteration, loss,
+                                                  Math.sqrt(inner(grad, grad)), step, trials,
+                                                  gradientTime, lineSearchTime));
+    }
+
+    /**
+     * Backtracking line search along a search direction, starting with step size 1. The rotation
+     * of the last trial step is kept in the workspace (and can be accepted), its step size is
+     * stored in step. If the workspace evaluates several step sizes concurrently (see
+     * SSAWorkspace.setSpeculativeSteps()), the step sizes 1, LSBETA, LSBETA^2, ... are evaluated
+     * in batches along the geodesic, and the largest one with a sufficient decrease is taken, which
+     * is the same step as in the sequential search.
+     *
+     * @param search antisymmetric search direction
+     * @param loss objective function value at the current point
+     * @param slope directional derivative along the search direction
+     * @return objective function value at the last trial step
+     */
+    protected double lineSearch(double search[], double loss, double slope)
+    {
+        long start = (listener != null) ? System.nanoTime() : 0;
+        if(ws.getSpeculativeSteps() > 1)
+        {
+            double lossNew = speculativeLineSearch(search, loss, slope);
+            if(listener != null)
+            {
+                lineSearchTime = System.nanoTime() - start;
+            }
+            return lossNew;
+        }
+        if(geodesic)
+        {
+            ws.setSearchDirection(search);
+        }
+        double lossNew = 0.0;
+        double t = 1;
+        for(int j = 0; j < LSTRIALS; j++, t *= LSBETA)
+        {
+            double trialLoss;
+            if(geodesic)
+            {
+                trialLoss = ws.evaluateAlong(t, false);
+            }
+            else
+            {
+                for(int l = 0; l < M.length; l++)
+                {
+                    M[l] = search[l]*t;
+                }
+                trialLoss = ws.evaluate(M, false);
+            }
+            lossNew = normalize(trialLoss);
+            step = t;
+            trials = j + 1;
+
+            // function decrease sufficient?
+            if(lossNew <= (loss + LSALPHA*t*slope))
+            {
+                break;
+            }
+        }
+        if(listener != null)
+        {
+            lineSearchTime = System.nanoTime() - start;
+        }
+        return lossNew;
+    }
+
+    /**
+     * Backtracking line search which evaluates batches of step sizes concurrently.
+     */
+    private double speculativeLineSearch(double search[], double loss, double slope)
+    {
+        int batch = ws.getSpeculativeSteps();
+        if(batchSteps == null || batchSteps.length != batch)
+        {
+            batchSteps = new double[batch];
+            batchLosses = new double[batch];
+        }
+        ws.setSearchDirection(search);
+        double lossNew = 0.0;
+        double t = 1;
+        for(int j = 0; j < LSTRIALS; j += batch)
+        {
+            int count = Math.min(batch, LSTRIALS - j);
+            for(int l = 0; l < count; l++, t *= LSBETA)
+            {
+                batchSteps[l] = t;
+            }
+            ws.evaluateAlong(batchSteps, count, batchLosses);
+
+            // largest step with sufficient decrease, or the smallest step of the last batch
+            for(int l = 0; l < count; l++)
+            {
+                lossNew = normalize(batchLosses[l]);
+                step = batchSteps[l];
+                trials = j + l + 1;
+                if(lossNew <= (loss + LSALPHA*step*slope) || j + l + 1 == LSTRIALS)
+                {
+                    ws.selectStep(l);
+                    return lossNew;
+                }
+            }
+        }
+        return lossNew;
+    }
+
+    /**
+     * Sets the blocks of an antisymmetric matrix which rotate within the first d and within the
+     * last n - d dimensions to zero. The objective function does not change under these rotations.
+     */
+    protected void project(double X[], int d)
+    {
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < n; b++)
+            {
+                if((a < d) == (b < d))
+                {
+                    X[a*n + b] = 0.0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scalar product <X, Y> = trace(X'*Y)/2 of two antisymmetric matrices.
+     */
+    protected static double inner(double X[], double Y[])
+    {
+        return 0.5*MathFunctions.dot(X, Y);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helper functions for running independent parts of the SSA computation on several threads.
+ */
+class Parallel
+{
+    private Parallel() { }
+
+    /**
+     * Creates a thread pool with the given number of daemon threads.
+     *
+     * @param threads number of threads
+     * @return thread pool, or null if threads is smaller than 2 (tasks are then run in the calling thread)
+     */
+    public static ExecutorService newPool(int threads)
+    {
+        if(threads < 2)
+        {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(threads, daemonThreads("ssa-worker"));
+    }
+
+    /**
+     * Returns a factory for daemon threads, so that a pool which has not been shut down does not
+     * keep the JVM (or Matlab) alive.
+     *
+     * @param name name of the threads
+     * @return thread factory
+     */
+    public static ThreadFactory daemonThreads(final String name)
+    {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Shuts down a thread pool created by newPool().
+     *
+     * @param pool thread pool (may be null)
+     */
+    public static void shutdown(ExecutorService pool)
+    {
+        if(pool != null)
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits tasks to a thread pool. If the pool is null, the tasks are not run until
+     * their results are requested by get().
+     *
+     * @param pool thread pool (may be null)
+     * @param tasks tasks
+     * @return futures in the same order as the tasks
+     */
+    public static <T> List<Future<T>> submitAll(ExecutorService pool, List<Callable<T>> tasks)
+    {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for(int i = 0; i < tasks.size(); i++)
+        {
+            FutureTask<T> f = new FutureTask<T>(tasks.get(i));
+            if(pool != null)
+            {
+                pool.execute(f);
+            }
+            futures.add(f);
+        }
+
+        return futures;
+    }
+
+    /**
+     * Waits for the result of a task submitted by submitAll(). If no thread has started the task yet,
+     * it is run in the calling thread.
+     *
+     * @param f future returned by submitAll()
+     * @return result of the task
+     */
+    public static <T> T get(Future<T> f)
+    {
+        if(!f.isDone() && f instanceof FutureTask)
+        {
+            // does nothing if the task is already running in another thread
+            ((FutureTask<T>)f).run();
+        }
+
+        try
+        {
+            return f.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a parallel task");
+        }
+        catch(ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Runs all tasks and returns their results in the order of the tasks.
+     *
+     * @param pool thread pool (may be null)
+     * @param tasks tasks
+     * @return results
+     */
+    public static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks)
+    {
+        List<Future<T>> futures = submitAll(pool, tasks);
+        List<T> results = new ArrayList<T>(futures.size());
+        for(int i = 0; i < futures.size(); i++)
+        {
+            results.add(get(futures.get(i)));
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,432 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Resampling test for the number of stationary sources. For every d, SSA is fitted to the data,
+ * and the loss of the s-sources is compared with the losses of fits to resampled data for which
+ * the null hypothesis "there are d stationary sources" holds: in the coordinates of the fitted
+ * sources, the s-sources of short blocks of consecutive samples are permuted between the blocks
+ * (or drawn with replacement), which makes them stationary, while the n-sources stay where they
+ * are. The cross-moments of s- and n-sources stay in place with the n-sources, so that their
+ * sampling noise is the same as on the data (hence, the blocks should be long compared to the
+ * number of dimensions). The empirical p-value is the fraction of resampled fits whose loss is at
+ * least the loss on the data; a small p-value means that the d-dimensional subspace found on the
+ * data is less stationary than expected, i.e. that there are fewer than d stationary sources.
+ *
+ * The sums and the sums of the outer products of the samples of every block are computed once,
+ * so the moments of the epochs of a resampled data set are sums over the blocks, without passing
+ * over the samples again. The fits run on par.getNumberOfThreads() threads, one restart after
+ * another each. The seeds of all fits and resamplings are drawn from the given seed before, so
+ * the result does not depend on the number of threads. The principal component settings of the
+ * data are not used.
+ */
+public class PermutationTest
+{
+    /** Resampling by permuting the blocks */
+    public static final int RESAMPLING_PERMUTATION = 1;
+    /** Resampling by drawing the blocks with replacement (bootstrap) */
+    public static final int RESAMPLING_BOOTSTRAP = 2;
+
+    /**
+     * Result of a test.
+     */
+    public static class Outcome
+    {
+        /** Numbers of stationary sources in ascending order */
+        public final int d[];
+        /** Loss of the s-sources on the data, for every d */
+        public final double loss[];
+        /** Losses of the s-sources on the resampled data sets, for every d */
+        public final double resampledLoss[][];
+        /** Empirical p-values, for every d */
+        public final double pValue[];
+
+        Outcome(int d[], double loss[], double resampledLoss[][], double pValue[])
+        {
+            this.d = d;
+            this.loss = loss;
+            this.resampledLoss = resampledLoss;
+            this.pValue = pValue;
+        }
+    }
+
+    private final int n;
+    private final int epochs;
+    /** Epoch and number of samples of every block */
+    private final int blockEpoch[];
+    private final int blockLength[];
+    /** Sum and sum of the outer products (n x n, row by row) of the samples of every block */
+    private final double blockSum[][];
+    private final double blockOuter[][];
+    /** Blocks with the full number of samples, which can be exchanged */
+    private final int exchangeable[];
+
+    /**
+     * Splits the epochs of the data into blocks and computes their statistics.
+     *
+     * @param data class containing the data (with a time series and an epoch definition)
+     * @param blockSize number of consecutive samples of an epoch per block (the last block of an epoch may be shorter and is not resampled)
+     */
+    public PermutationTest(Data data, int blockSize)
+    {
+        if(blockSize < 1) throw new IllegalArgumentException("Block size must be positive");
+        if(data.X == null || data.getEpochType() == Data.EPOCHS_SPECIFIED_MOMENTS)
+        {
+            throw new IllegalArgumentException("The resampling test needs a time series");
+        }
+
+        int samples[][] = data.epochSamples();
+        n = data.getNumberOfDimensions();
+        epochs = samples.length;
+        int blocks = 0;
+        for(int e = 0; e < epochs; e++)
+        {
+            blocks += (samples[e].length + blockSize - 1) / blockSize;
+        }
+
+        double x[][] = data.X.getArray();
+        blockEpoch = new int[blocks];
+        blockLength = new int[blocks];
+        blockSum = new double[blocks][n];
+        blockOuter = new double[blocks][n*n];
+        List<Integer> full = new ArrayList<Integer>();
+        int b = 0;
+        for(int e = 0; e < epochs; e++)
+        {
+            for(int from = 0; from < samples[e].length; from += blockSize, b++)
+            {
+                int to = Math.min(from + blockSize, samples[e].length);
+                blockEpoch[b] = e;
+                blockLength[b] = to - from;
+                double s[] = blockSum[b];
+                double Q[] = blockOuter[b];
+                for(int k = from; k < to; k++)
+                {
+                    int t = samples[e][k];
+                    for(int i = 0; i < n; i++)
+                    {
+                        s[i] += x[i][t];
+                        for(int j = i; j < n; j++)
+                        {
+                            Q[i*n + j] += x[i][t]*x[j][t];
+                        }
+                    }
+                }
+                for(int i = 0; i < n; i++)
+                {
+                    for(int j = 0; j < i; j++)
+                    {
+                        Q[i*n + j] = Q[j*n + i];
+                    }
+                }
+                if(blockLength[b] == blockSize)
+                {
+                    full.add(b);
+                }
+            }
+        }
+        exchangeable = new int[full.size()];
+        for(int k = 0; k < exchangeable.length; k++)
+        {
+            exchangeable[k] = full.get(k);
+        }
+    }
+
+    /**
+     * Tests the given numbers of stationary sources.
+     *
+     * @param par class containing the SSA parameters (the number of stationary sources and the warm start are ignored)
+     * @param ds numbers of stationary sources
+     * @param resamples number of resampled data sets per d
+     * @param resampling RESAMPLING_PERMUTATION or RESAMPLING_BOOTSTRAP
+     * @param seed seed of the random number generator for the resampling and the restarts
+     * @return losses and p-values
+     */
+    public Outcome test(final SSAParameters par, int ds[], final int resamples, final int resampling, long seed)
+    {
+        final int sorted[] = ds.clone();
+        Arrays.sort(sorted);
+        if(sorted.length == 0)
+        {
+            throw new IllegalArgumentException("At least one number of stationary sources has to be given.");
+        }
+        if(resamples < 1) throw new IllegalArgumentException("Number of resamples must be positive");
+        if(resampling != RESAMPLING_PERMUTATION && resampling != RESAMPLING_BOOTSTRAP)
+        {
+            throw new IllegalArgumentException("Unknown resampling");
+        }
+
+        // all seeds are drawn before the fits are started
+        Random rng = new Random(seed);
+        final long fitSeeds[] = new long[sorted.length];
+        final long resampleSeeds[][] = new long[sorted.length][resamples];
+        for(int i = 0; i < sorted.length; i++)
+        {
+            fitSeeds[i] = rng.nextLong();
+            for(int r = 0; r < resamples; r++)
+            {
+                resampleSeeds[i][r] = rng.nextLong();
+            }
+        }
+
+        final double loss[] = new double[sorted.length];
+        final double resampledLoss[][] = new double[sorted.length][resamples];
+        // statistics of the blocks in the coordinates of the sources fitted for every d
+        final double sourceSum[][][] = new double[sorted.length][][];
+        final double sourceOuter[][][] = new double[sorted.length][][];
+        ExecutorService pool = Parallel.newPool(par.getNumberOfThreads());
+        try
+        {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for(int i = 0; i < sorted.length; i++)
+            {
+                final int index = i;
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        int identity[] = resample(null, 0);
+                        Results fit = fit(par, sorted[index], blockSum, blockOuter, 0, identity, new Random(fitSeeds[index]));
+                        loss[index] = fit.loss_s;
+                        double B[][] = SSAMatrix.concatVertically(fit.Ps, fit.Pn).getArray();
+                        sourceSum[index] = new double[blockSum.length][];
+                        sourceOuter[index] = new double[blockSum.length][];
+                        for(int b = 0; b < blockSum.length; b++)
+                        {
+                            sourceSum[index][b] = transform(B, blockSum[b]);
+                            sourceOuter[index][b] = transformOuter(B, blockOuter[b]);
+                        }
+                        return null;
+                    }
+                });
+            }
+            Parallel.invokeAll(pool, tasks);
+
+            tasks.clear();
+            for(int i = 0; i < sorted.length; i++)
+            {
+                for(int r = 0; r < resamples; r++)
+                {
+                    final int index = i;
+                    final int sample = r;
+                    tasks.add(new Callable<Object>() {
+                        public Object call() {
+                            Random rrng = new Random(resampleSeeds[index][sample]);
+                            int source[] = resample(rrng, resampling);
+                            Results fit = fit(par, sorted[index], sourceSum[index], sourceOuter[index], sorted[index],
+                                              source, new Random(rrng.nextLong()));
+                            resampledLoss[index][sample] = fit.loss_s;
+                            return null;
+                        }
+                    });
+                }
+            }
+            Parallel.invokeAll(pool, tasks);
+        }
+        finally
+        {
+            Parallel.shutdown(pool);
+        }
+
+        double pValue[] = new double[sorted.length];
+        for(int i = 0; i < sorted.length; i++)
+        {
+            int exceed = 0;
+            for(int r = 0; r < resamples; r++)
+            {
+                if(resampledLoss[i][r] >= loss[i])
+                {
+                    exceed++;
+                }
+            }
+            pValue[i] = (1.0 + exceed) / (1.0 + resamples);
+        }
+        return new Outcome(sorted, loss, resampledLoss, pValue);
+    }
+
+    /**
+     * Draws which block provides the s-sources for every block.
+     *
+     * @param rng random number generator (not used for the identity)
+     * @param resampling RESAMPLING_PERMUTATION, RESAMPLING_BOOTSTRAP or 0 for the identity
+     * @return index of the source block for every block
+     */
+    private int[] resample(Random rng, int resampling)
+    {
+        int source[] = new int[blockSum.length];
+        for(int b = 0; b < source.length; b++)
+        {
+            source[b] = b;
+        }
+        int m = exchangeable.length;
+        if(resampling == RESAMPLING_PERMUTATION)
+        {
+            int perm[] = exchangeable.clone();
+            for(int k = m - 1; k > 0; k--)
+            {
+                int l = rng.nextInt(k + 1);
+                int buf = perm[k];
+                perm[k] = perm[l];
+                perm[l] = buf;
+            }
+            for(int k = 0; k < m; k++)
+            {
+                source[exchangeable[k]] = perm[k];
+            }
+        }
+        else if(resampling == RESAMPLING_BOOTSTRAP)
+        {
+            for(int k = 0; k < m; k++)
+            {
+                source[exchangeable[k]] = exchangeable[rng.nextInt(m)];
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Fits SSA to the epochs which are put together from the blocks: the sums and products of
+     * the first split coordinates of block b are the ones of block source[b], the others its own.
+     */
+    private Results fit(SSAParameters par, int d, double sum[][], double outer[][], int split, int source[],
+                        Random seedRng)
+    {
+        double epochSum[][] = new double[epochs][n];
+        double epochOuter[][] = new double[epochs][n*n];
+        int epochSizes[] = new int[epochs];
+        for(int b = 0; b < source.length; b++)
+        {
+            int e = blockEpoch[b];
+            int c = source[b];
+            epochSizes[e] += blockLength[b];
+            double s[] = epochSum[e];
+            double Q[] = epochOuter[e];
+            for(int i = 0; i < n; i++)
+            {
+                s[i] += (i < split) ? sum[c][i] : sum[b][i];
+                for(int j = 0; j < n; j++)
+                {
+                    // only the products of two s-sources are taken from the source block
+                    Q[i*n + j] += (i < split && j < split) ? outer[c][i*n + j] : outer[b][i*n + j];
+                }
+            }
+        }
+
+        SSAMatrix S[] = new SSAMatrix[epochs];
+        SSAMatrix mu[] = new SSAMatrix[epochs];
+        for(int e = 0; e < epochs; e++)
+        {
+            double N = epochSizes[e];
+            double m[][] = new double[n][1];
+            double C[][] = new double[n][n];
+            for(int i = 0; i < n; i++)
+            {
+                m[i][0] = epochSum[e][i] / N;
+            }
+            for(int i = 0; i < n; i++)
+            {
+                for(int j = 0; j < n; j++)
+                {
+                    C[i][j] = (epochOuter[e][i*n + j] - N*m[i][0]*m[j][0]) / (N - 1.0);
+                }
+            }
+            S[e] = new SSAMatrix(C);
+            mu[e] = new SSAMatrix(m);
+        }
+
+        SSAParameters parD = new SSAParameters(par);
+        parD.setNumberOfStationarySources(d);
+        parD.setNumberOfThreads(1);
+        parD.setWarmStart(null, null);
+        Data data = new Data();
+        data.setEpochMoments(S, mu, epochSizes);
+        return new SSA().optimize(parD, data, seedRng);
+    }
+
+    /**
+     * Computes B*s.
+     */
+    private static double[] transform(double B[][], double s[])
+    {
+        int n = s.length;
+        double y[] = new double[n];
+        for(int i = 0; i < n; i++)
+        {
+            for(int k = 0; k < n; k++)
+            {
+                y[i] += B[i][k]*s[k];
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Computes B*Q*B' for an n x n matrix Q (row by row).
+     */
+    private static double[] transformOuter(double B[][], double Q[])
+    {
+        int n = B.length;
+        double BQ[] = new double[n*n];
+        for(int i = 0; i < n; i++)
+        {
+            for(int k = 0; k < n; k++)
+            {
+                double b = B[i][k];
+                for(int j = 0; j < n; j++)
+                {
+                    BQ[i*n + j] += b*Q[k*n + j];
+                }
+            }
+        }
+        double Y[] = new double[n*n];
+        for(int i = 0; i < n; i++)
+        {
+            for(int j = 0; j < n; j++)
+            {
+                double v = 0;
+                for(int k = 0; k < n; k++)
+                {
+                    v += BQ[i*n + k]*B[j][k];
+                }
+                Y[i*n + j] = v;
+            }
+        }
+        return Y;
+    }
+}
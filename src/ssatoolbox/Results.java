@@ -71,6 +71,9 @@ public class Results {
     /** True, if the SSA algorithm converged */
     public boolean converged;
 
+    /** True, if the iteration or time limit (see SSAParameters) has stopped or skipped a restart */
+    public boolean budgetExhausted = false;
+
     // used parameters
     /** Number of stationary sources which has been used */
     public int d;
@@ -32,27 +32,48 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package ssatoolbox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 /**
  * Implementation of the "Stationary Subspace Analysis" (SSA) algorithm.
  *
+ * An instance runs one optimization at a time, since stop() and the iteration listeners refer
+ * to the running optimization; all other state of a run is local to it. To run several
+ * optimizations at once, use one instance per optimization, e.g. by SSAEngine.
+ *
  * @author Jan Saputra Mueller, saputra@cs.tu-berlin.de
  */
 public class SSA
 {
-    // buffer for rotated covariance matrices and means
-    private SSAMatrix Snew[];
-    private SSAMatrix munew[];
-
-    // constants for line-search
-    private static final double LSALPHA = 0.5*(0.01+0.3);
-    private static final double LSBETA = 0.4;
-    private static final double RDEC_THRESHOLD = 1e-8;
-
     // handle to logger
-    private Logger logger = null;
+    private volatile Logger logger = null;
     
     private volatile boolean stopped = false;
 
+    // listeners for the iterations and the listener which calls them one after another (passed to
+    // the optimizers only if there are listeners)
+    private final List<IterationListener> iterationListeners = new CopyOnWriteArrayList<IterationListener>();
+    private final IterationListener iterationDispatcher = new IterationListener() {
+        public void iterationDone(IterationEvent event) {
+            synchronized(iterationListeners)
+            {
+                for(IterationListener listener : iterationListeners)
+                {
+                    listener.iterationDone(event);
+                }
+            }
+        }
+    };
+
     /**
      * Creates a new instance of the class SSA.
      */
@@ -105,6 +126,23 @@ public class SSA
         {
             throw new IllegalArgumentException("At least one of the options 'use mean' or 'use covariance matrix' has to be selected.");
         }
+
+        if(par.getWarmStartPs() != null)
+        {
+            int n = data.getNumberOfDimensions();
+            int d = par.getNumberOfStationarySources();
+            if(par.getWarmStartPs().getRows() != d || par.getWarmStartPs().getColumns() != n)
+            {
+                throw new IllegalArgumentException("The projection for the warm start has to be a " + d + " x " + n + " matrix");
+            }
+            // (the projection of a result on data which has been projected onto its principal
+            // components has fewer rows)
+            if(par.getWarmStartPn() != null && (par.getWarmStartPn().getRows() > n - d || par.getWarmStartPn().getColumns() != n))
+            {
+                throw new IllegalArgumentException("The projection onto the non-stationary subspace for the warm start can have at most "
+                                                   + (n - d) + " rows and has to have " + n + " columns");
+            }
+        }
     }
 
     /**
@@ -118,135 +156,330 @@ public class SSA
      */
     public Results optimizeOnce(SSAParameters par, Data data, boolean optNSources, SSAMatrix init)
     {
-        SSAMatrix S[] = new SSAMatrix[data.S.length];
-        SSAMatrix mu[] = null;
-        if(par.isUseMean())
-	        mu = new SSAMatrix[data.mu.length];
+        return optimizeOnce(par, data, optNSources, init, null);
+    }
 
-        int n = data.getNumberOfDimensions();
-        int d = optNSources ? (n - par.getNumberOfStationarySources()) : par.getNumberOfStationarySources();
+    /**
+     * Solves the SSA optimization problem using backtracking linesearch once.
+     * The random initialization is drawn from the given random number generator, which makes
+     * it possible to run several restarts in parallel.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param init initialization rotation matrix for the gradient descent *in whitening coordinates*! (Should be normally null!)
+     * @param rng random number generator for the initialization (if null, the global one is used)
+     * @return Results object
+     */
+    public Results optimizeOnce(SSAParameters par, Data data, boolean optNSources, SSAMatrix init, Random rng)
+    {
+        return restoreDimensions(data, optimizeOnce(par, data, optNSources, init, rng, 0, new Budget(par, 1)));
+    }
+
+    /**
+     * Runs one restart of the optimization, see optimizeOnce().
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param init initialization rotation matrix *in whitening coordinates* (if null, it is initialized randomly)
+     * @param rng random number generator for the initialization (if null, the global one is used)
+     * @param restart index of the restart (for the iteration listeners)
+     * @param budget iteration and time limits
+     * @return Results object
+     */
+    private Results optimizeOnce(SSAParameters par, Data data, boolean optNSources, SSAMatrix init, Random rng,
+                                 int restart, Budget budget)
+    {
+        Restart run = new Restart(initialDemixingMatrix(par, data, init, rng));
+        run.rng = rng;
+        run.index = restart;
+        if(budget.timed)
+        {
+            run.timed = true;
+            run.deadline = budget.share(1);
+        }
+        try
+        {
+            advance(par, data, optNSources, run, Integer.MAX_VALUE, budget);
+        }
+        finally
+        {
+            run.release();
+        }
+        Results results = createResults(par, data, optNSources, run);
+        results.budgetExhausted = budget.exhausted;
+        return results;
+    }
 
+    /**
+     * State of one restart, which can be advanced by several calls of advance().
+     */
+    private static class Restart
+    {
+        /** Current demixing matrix (null, if the restart has not been initialized yet) */
         SSAMatrix B;
-        if(init == null)
+        /** Seed of the random initialization, if B is null */
+        long seed;
+        /** Random number generator of the restart, also used by stochastic optimizers (null: the global one) */
+        Random rng;
+        /** Index of the restart */
+        int index;
+        /** Loss at B */
+        double loss = Double.POSITIVE_INFINITY;
+        /** Total number of iterations so far */
+        int iterations = 0;
+        boolean converged = false;
+        /** Deadline of the restart in terms of System.nanoTime(), if timed is set */
+        boolean timed = false;
+        long deadline;
+        /** Workspace and thread pools of the restart (created by the first call of advance(), see release()) */
+        SSAWorkspace ws;
+        ExecutorService epochPool;
+        ExecutorService lineSearchPool;
+
+        Restart(SSAMatrix B)
         {
-            // start with whitening + random rotation
-            B = MathFunctions.randRot(n).mmuli(data.W);
+            this.B = B;
         }
-        else
+
+        /**
+         * Shuts down the thread pools of the restart and drops its workspace. The restart can
+         * still be advanced afterwards; advance() then creates a new workspace.
+         */
+        void release()
+        {
+            Parallel.shutdown(epochPool);
+            Parallel.shutdown(lineSearchPool);
+            epochPool = null;
+            lineSearchPool = null;
+            ws = null;
+        }
+    }
+
+    /**
+     * Iteration and time limits of one call of optimize() or sweep() (see SSAParameters). The time
+     * which is left is split across the restarts which have not been started yet.
+     */
+    private static class Budget
+    {
+        /** Maximum number of iterations per restart and phase */
+        final int maxIterations;
+        /** Deadline in terms of System.nanoTime(), if timed is set */
+        final boolean timed;
+        final long deadline;
+        /** Number of restarts which run at the same time */
+        final int parallel;
+        /** Number of restarts (of all phases) which have not been started yet */
+        private int remaining;
+        /** True, if a restart has been stopped or skipped by one of the limits */
+        volatile boolean exhausted = false;
+
+        /**
+         * @param par class containing the SSA parameters
+         * @param restarts total number of restarts of all phases
+         */
+        Budget(SSAParameters par, int restarts)
+        {
+            maxIterations = (par.getMaxIterations() > 0) ? par.getMaxIterations() : Integer.MAX_VALUE;
+            timed = (par.getTimeLimit() > 0);
+            deadline = System.nanoTime() + par.getTimeLimit()*1000000L;
+            parallel = par.getNumberOfThreads();
+            remaining = restarts;
+        }
+
+        /**
+         * Returns the deadline for restarts which start now: the time which is left is split
+         * equally across the remaining restarts, of which the given number run at the same time.
+         *
+         * @param restarts number of restarts which start now
+         */
+        synchronized long share(int restarts)
+        {
+            long now = System.nanoTime();
+            double left = Math.max(0, deadline - now);
+            int total = Math.max(remaining, restarts);
+            remaining = total - restarts;
+            return now + (long)(left * Math.min(Math.max(restarts, parallel), total) / total);
+        }
+
+        /**
+         * Returns whether the deadline has passed.
+         */
+        boolean expired()
+        {
+            return timed && System.nanoTime() - deadline >= 0;
+        }
+    }
+
+    /**
+     * Returns the initial demixing matrix of a restart.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param init initialization rotation matrix *in whitening coordinates* (if null, a random one is drawn)
+     * @param rng random number generator for the initialization (if null, the global one is used)
+     * @return initial demixing matrix
+     */
+    private SSAMatrix initialDemixingMatrix(SSAParameters par, Data data, SSAMatrix init, Random rng)
+    {
+        if(init != null)
         {
             // start with given initialization matrix
-            B = init;
+            return init;
         }
 
-        // apply initialization matrix to covariance matrices and means
-        for(int i = 0; i < data.S.length; i++)
+        // start with whitening + random rotation
+        int n = data.getNumberOfReducedDimensions();
+        if(rng == null)
+        {
+            return MathFunctions.randRot(n, par.getRetraction()).mmuli(data.W);
+        }
+        else
         {
-            S[i] = B.mmul(data.S[i]).mmuli(B.transpose());
-            if(par.isUseMean())
-	            mu[i] = B.mmul(data.mu[i].sub(data.muall));
+            return MathFunctions.randRot(n, rng, par.getRetraction()).mmuli(data.W);
         }
+    }
+
+    /**
+     * Continues the optimization of a restart for at most the given number of iterations. The
+     * workspace and the thread pools are created by the first call and kept in the restart for the
+     * following calls; they have to be freed by run.release().
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param run restart to advance
+     * @param maxIterations maximum number of iterations
+     * @param budget iteration and time limits
+     */
+    private void advance(SSAParameters par, Data data, boolean optNSources, Restart run, int maxIterations, Budget budget)
+    {
+        maxIterations = Math.min(maxIterations, budget.maxIterations - run.iterations);
+        if(maxIterations <= 0)
+        {
+            return;
+        }
+        int n = data.getNumberOfReducedDimensions();
+        int d = optNSources ? (n - par.getNumberOfStationarySources()) : par.getNumberOfStationarySources();
 
         int k; // degrees of freedom of chi^2 distribution
         if(par.isUseMean() && par.isUseCovariance())
         {
             // use both means and covariances
-            k = (S.length*d*(d+3)) / 2;
+            k = (data.S.length*d*(d+3)) / 2;
         }
         else if(par.isUseCovariance())
         {
             // use only covariances
-            k = (S.length*d*(d+1)) / 2;
+            k = (data.S.length*d*(d+1)) / 2;
         }
         else
         {
             // use only means
-            k = S.length*d;
+            k = data.S.length*d;
         }
-        // Optimization loop
-        SSAMatrix grad, gradOld = null;
-        SSAMatrix alpha, alphaOld = null;
-        double loss = 0, lossNew = 0;
-        boolean converged = false;
-        int i;
-        for(i = 0; i < Integer.MAX_VALUE; i++)
-        {
-            // get current objective function value and gradient
-            SSAMatrix ret[] = objectiveFunction(    n, d,
-                                                    S, mu, data.epochSizes, null, true,
-                                                    par.isUseMean());
-            loss = normalizeObjectiveFunction(ret[0].get(0, 0), k);
-            //loss = ret[0].get(0, 0);
-            grad = normalizeGradient(ret[1], ret[0].get(0, 0));
-
-            // optimize n-sources?
-            if(optNSources)
-            {
-                // simply change sign of loss and gradient
-                loss = -loss;
-                grad.muli(-1);
-            }
 
-            // conjugate gradient
-            if(i == 0)
-            {
-                alpha = grad.mul(-1);
-            }
-            else
-            {
-                double gamma = grad.mul(grad.sub(gradOld)).sum()/gradOld.mul(gradOld).sum();
-                alpha = grad.mul(-1).addi(alphaOld.mul(gamma));
-            }
-            gradOld = grad;
-            alphaOld = alpha;
-
-            // normalize search direction
-            SSAMatrix search = alpha.div(Math.sqrt(alpha.mul(alpha).sum() * 2));
-            //SSAMatrix search = alpha.div(alpha.norm2());
-
-            // backtracking line search
-            double t = 1;
-            for(int j = 0; j < 10; j++, t *= LSBETA)
-            {
-                SSAMatrix M = search.mul(t);
-                ret = objectiveFunction(n, d,
-                                        S, mu, data.epochSizes, M, false,
-                                        par.isUseMean());
-                lossNew = normalizeObjectiveFunction(ret[0].get(0, 0), k);
-                //lossNew = ret[0].get(0, 0);
-                if(optNSources)
-                {
-                    lossNew = -lossNew;
-                }
+        if(run.ws == null)
+        {
+            // threads for evaluating the objective function on blocks of epochs in parallel
+            int epochBlocks = par.getNumberOfEpochThreads();
+            run.epochPool = Parallel.newPool(epochBlocks);
+            // threads for evaluating several step sizes of the line search at once
+            int lineSearchSteps = par.getNumberOfLineSearchThreads();
+            run.lineSearchPool = Parallel.newPool(lineSearchSteps);
+
+            // the workspace holds all buffers of this run, so that the optimization loop does not
+            // allocate memory; the covariance matrices are only projected by the first d rows of B
+            run.ws = new SSAWorkspace(data, run.B, d, par.isUseMean(), run.epochPool, epochBlocks,
+                                      par.isSinglePrecision());
+            run.ws.setRetraction(par.getRetraction());
+            run.ws.setSpeculativeSteps(lineSearchSteps, run.lineSearchPool);
+        }
+        SSAWorkspace ws = run.ws;
 
-                // function decrease sufficient?
-                if(lossNew <= (loss + LSALPHA*t*(0.5*grad.mul(search).sum())))
-                {
-                    break;
-                }
-            }
+        // Optimization loop
+        Optimizer optimizer = Optimizer.create(par);
+        optimizer.setRandom(run.rng);
+        if(!iterationListeners.isEmpty())
+        {
+            optimizer.setIterationListener(iterationDispatcher, run.index, run.iterations);
+        }
+        if(run.timed)
+        {
+            optimizer.setDeadline(run.deadline);
+        }
+        optimizer.minimize(ws, k, optNSources, maxIterations);
 
-            // stop if line search failed
-            if(lossNew >= loss)
-            {
-                converged = true;
-                break;
-            }
+        run.B = ws.getDemixingMatrix();
+        run.loss = optimizer.getLoss();
+        run.converged = optimizer.isConverged();
+        run.iterations += optimizer.getIterations();
+        if(!run.converged && (run.iterations >= budget.maxIterations || optimizer.isDeadlineReached()))
+        {
+            budget.exhausted = true;
+        }
+    }
 
-            // stop if relative function decrease is below threshold
-            double relDecrease = Math.abs((loss - lossNew)/loss);
-            if(relDecrease < RDEC_THRESHOLD)
-            {
-                converged = true;
-                break;
-            }
+    /**
+     * Continues the optimization of the best restart of a phase in double precision until it
+     * converges. The iteration listeners see this as restart number par.getNumberOfRestarts().
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources the n-sources have been optimized instead of the s-sources
+     * @param result result of the phase
+     * @param budget iteration and time limits
+     * @return refined Results object
+     */
+    private Results refine(SSAParameters par, Data data, boolean optNSources, Results result, Budget budget)
+    {
+        if(budget.expired())
+        {
+            budget.exhausted = true;
+            return result;
+        }
 
-            // rotated S and mu
-            S = Snew;
-            mu = munew;
+        SSAParameters parD = new SSAParameters(par);
+        parD.setSinglePrecision(false);
+        if(parD.getOptimizer() == SSAParameters.OPTIMIZER_STOCHASTIC)
+        {
+            parD.setOptimizer(SSAParameters.OPTIMIZER_CG);
+        }
 
-            // update demixing matrix
-            B = ret[2].mmul(B);
+        Restart run = new Restart(optNSources ? SSAMatrix.concatVertically(result.Pn, result.Ps)
+                                              : SSAMatrix.concatVertically(result.Ps, result.Pn));
+        run.index = par.getNumberOfRestarts();
+        run.iterations = result.iterations;
+        run.loss = result.loss;
+        run.converged = result.converged;
+        run.timed = budget.timed;
+        run.deadline = budget.deadline;
+        try
+        {
+            advance(parD, data, optNSources, run, Integer.MAX_VALUE, budget);
+        }
+        finally
+        {
+            run.release();
         }
+        return createResults(par, data, optNSources, run);
+    }
+
+    /**
+     * Creates the Results object of one optimization phase.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources the n-sources have been optimized instead of the s-sources
+     * @param run finished restart
+     * @return Results object
+     */
+    private Results createResults(SSAParameters par, Data data, boolean optNSources, Restart run)
+    {
+        int n = data.getNumberOfReducedDimensions();
+        int d = optNSources ? (n - par.getNumberOfStationarySources()) : par.getNumberOfStationarySources();
+        SSAMatrix B = run.B;
 
         // projection matrix for stationary subspace
         SSAMatrix Ps = B.getRange(0, d, 0, n);
@@ -271,9 +504,7 @@ public class SSA
             Bn = buf;
         }
 
-        //return new SSAMatrix[]{Ps, Pn, Mix, new SSAMatrix(new double[]{matLoss}), new SSAMatrix(new double[]{converged})};
-
-        return new Results(Ps, Pn, Bs, Bn, Math.min(loss, lossNew), converged, i,
+        return new Results(Ps, Pn, Bs, Bn, run.loss, run.converged, run.iterations,
                           par.getNumberOfStationarySources(),
                           par.getNumberOfRestarts(),
                           par.isUseMean(),
@@ -292,6 +523,21 @@ public class SSA
      * @return Results object
      */
     public Results optimize(SSAParameters par, Data data)
+    {
+        return optimize(par, data, null);
+    }
+
+    /**
+     * Solves the SSA optimization problem, drawing the seeds of the restarts from the given
+     * random number generator instead of the global one. With a generator of its own, the
+     * result does not depend on other optimizations which run at the same time.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @return Results object
+     */
+    public Results optimize(SSAParameters par, Data data, Random seedRng)
     {
         appendToLog(""); // empty line
 
@@ -301,74 +547,211 @@ public class SSA
         }
 
         checkParameters(par, data);
-		
-		if(data.getEpochType() != data.EPOCHS_SPECIFIED_MOMENTS)
-		{
-           appendToLog("Calculating covariance matrices and means...");
-		}
-        data.epochize(par.isUseCovariance());
+        epochize(par, data, par.getNumberOfStationarySources());
 
         appendToLog("Running SSA...");
 
-        if(par.isUseCovariance())
+        stopped = false;
+        return optimizeEpochized(par, data, seedRng, new Budget(par, 2*par.getNumberOfRestarts()));
+    }
+
+    /**
+     * Solves the SSA optimization problem for several numbers of stationary sources. The epochs,
+     * their moments and the whitening matrix are computed only once. The values of d are split
+     * into par.getNumberOfThreads() contiguous blocks, which are fitted in parallel. Within a
+     * block, the first value of d is fitted with par.getNumberOfRestarts() restarts, the
+     * following ones start from the solution for the previous value of d only (one restart,
+     * see SSAParameters.setWarmStart()). Thus, the results depend on the number of threads.
+     *
+     * @param par class containing the SSA parameters (the number of stationary sources is ignored)
+     * @param data class containing the data
+     * @param ds numbers of stationary sources
+     * @return results for the numbers of stationary sources in ascending order
+     */
+    public Results[] sweep(final SSAParameters par, final Data data, int ds[])
+    {
+        appendToLog(""); // empty line
+
+        final int sorted[] = ds.clone();
+        java.util.Arrays.sort(sorted);
+        if(sorted.length == 0)
         {
-            // optimization by gradient descent
+            throw new IllegalArgumentException("At least one number of stationary sources has to be given.");
+        }
 
-            stopped = false;
+        if(data.getEpochType() == Data.EPOCHS_EQUALLY_HEURISTIC)
+        {
+            // the smallest number of stationary sources needs the most epochs
+            data.setNumberOfEpochsByHeuristic(sorted[0], par.isUseMean(), par.isUseCovariance());
+        }
 
-            // optimization of the s-sources
-            Results optSSrc = new Results(null, null, null, null, Double.POSITIVE_INFINITY, false, 0, 0, 0, false, false, 0, null, null);
-            appendToLog("Optimizing the stationarity of the s-sources...");
-            for(int i = 0; i < par.getNumberOfRestarts(); i++)
+        for(int i = 0; i < sorted.length; i++)
+        {
+            SSAParameters parD = new SSAParameters(par);
+            parD.setNumberOfStationarySources(sorted[i]);
+            if(par.getWarmStartPs() != null && par.getWarmStartPs().getRows() != sorted[i])
             {
-                Results buf = optimizeOnce(par, data, false, null);
-                if(buf.loss < optSSrc.loss)
-                {
-                    optSSrc = buf;
-                }
-                if(logger != null)
-                {
-                    // show progress
-                    appendToLog("Repetition " + (i+1) + ": iterations=" + buf.iterations + ", min. objective function value=" + buf.loss);
-                }
-                if(stopped)
-                {
-                    return optSSrc;
-                }
+                parD.setWarmStart(null, null);
             }
+            checkParameters(parD, data);
+        }
 
-            // optimization of the n-sources
-            Results optNSrc = new Results(null, null, null, null, Double.POSITIVE_INFINITY, false, 0, 0, 0, false, false, 0, null, null);
-            appendToLog("Optimizing the non-stationarity of the n-sources...");
-            for(int i = 0; i < par.getNumberOfRestarts(); i++)
-            {
-                Results buf;
-                if(i == 0)
-                {
-                    buf = optimizeOnce(par, data, true, SSAMatrix.concatVertically(optSSrc.Pn, optSSrc.Ps));
-                }
-                else
-                {
-                    buf = optimizeOnce(par, data, true, null);
+        epochize(par, data, sorted[sorted.length - 1]);
+
+        appendToLog("Running SSA for d=" + sorted[0] + ",...," + sorted[sorted.length - 1] + "...");
+
+        stopped = false;
+
+        // contiguous blocks of values of d, which are fitted one after another with warm starts;
+        // remaining threads are used for the restarts
+        final int blocks = Math.min(par.getNumberOfThreads(), sorted.length);
+        final int restartThreads = Math.max(1, par.getNumberOfThreads() / blocks);
+        final Results results[] = new Results[sorted.length];
+        // the first d of each block has all restarts, the others one, with two phases each
+        final Budget budget = new Budget(par, 2*(blocks*par.getNumberOfRestarts() + sorted.length - blocks));
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int b = 0; b < blocks; b++)
+        {
+            final int from = (b * sorted.length) / blocks;
+            final int to = ((b + 1) * sorted.length) / blocks;
+            // the seeds of the restarts are drawn from a generator per block, so that the result
+            // does not depend on the order in which the blocks draw them
+            final Random seedRng = new Random(SSAMatrix.nextRandomSeed());
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    int n = data.getNumberOfDimensions();
+                    for(int i = from; i < to && !stopped; i++)
+                    {
+                        int d = sorted[i];
+                        SSAParameters parD = new SSAParameters(par);
+                        parD.setNumberOfStationarySources(d);
+                        parD.setNumberOfThreads(restartThreads);
+                        if(i > from)
+                        {
+                            // start from the solution for the neighbouring d
+                            Results prev = results[i - 1];
+                            parD.setNumberOfRestarts(1);
+                            parD.setWarmStart(SSAMatrix.concatVertically(prev.Ps, prev.Pn).getRange(0, d, 0, n), null);
+                        }
+                        else if(par.getWarmStartPs() != null && par.getWarmStartPs().getRows() != d)
+                        {
+                            parD.setWarmStart(null, null);
+                        }
+                        results[i] = optimizeEpochized(parD, data, seedRng, budget);
+                    }
+                    return null;
                 }
+            });
+        }
+        ExecutorService pool = Parallel.newPool(blocks);
+        try
+        {
+            Parallel.invokeAll(pool, tasks);
+        }
+        finally
+        {
+            Parallel.shutdown(pool);
+        }
 
-                if(buf.loss < optNSrc.loss)
+        for(int i = 0; i < sorted.length; i++)
+        {
+            if(results[i] != null)
+            {
+                appendToLog("d=" + sorted[i] + ": loss_s=" + results[i].loss_s + ", loss_n=" + results[i].loss_n);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Solves the SSA optimization problem on data whose moments have already been computed.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @param budget iteration and time limits
+     * @return Results object (in the original channels)
+     */
+    private Results optimizeEpochized(SSAParameters par, Data data, Random seedRng, Budget budget)
+    {
+        return restoreDimensions(data, solveEpochized(par, data, seedRng, budget));
+    }
+
+    /**
+     * Solves the SSA optimization problem on data whose moments have already been computed, in
+     * the reduced dimensions (see Data.getReduction()).
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @param budget iteration and time limits
+     * @return Results object
+     */
+    private Results solveEpochized(SSAParameters par, Data data, Random seedRng, Budget budget)
+    {
+        if(par.isUseCovariance())
+        {
+            // optimization by gradient descent
+
+            ExecutorService pool = Parallel.newPool(par.getNumberOfThreads());
+            Results optSSrc, optNSrc;
+            try
+            {
+                // optimization of the s-sources
+                appendToLog("Optimizing the stationarity of the s-sources...");
+                SSAMatrix initS = null;
+                if(par.getWarmStartPs() != null)
                 {
-                    optNSrc = buf;
+                    appendToLog("Starting the first restart from the given projection.");
+                    initS = rewhiten(data, par.getWarmStartPs());
                 }
-                if(logger != null)
+                if(pool != null && par.isPipelinePhases() && par.getRoundIterations() == 0)
                 {
-                    // show progress
-                    appendToLog("Repetition " + (i+1) + ": iterations=" + buf.iterations + ", max. objective function value=" + -buf.loss);
+                    // the optimization of the n-sources is started right away
+                    Results opts[] = runPipelined(pool, par, data, initS, seedRng, budget);
+                    optSSrc = opts[0];
+                    optNSrc = opts[1];
+                    if(stopped)
+                    {
+                        return optSSrc;
+                    }
                 }
-                if(stopped)
+                else
                 {
-                    break;
+                    optSSrc = runRestarts(pool, par, data, false, initS, seedRng, budget);
+                    if(stopped)
+                    {
+                        return optSSrc;
+                    }
+
+                    // optimization of the n-sources
+                    appendToLog("Optimizing the non-stationarity of the n-sources...");
+                    SSAMatrix initN;
+                    if(par.getWarmStartPn() != null && data.getReduction() == null)
+                    {
+                        initN = rewhiten(data, par.getWarmStartPn());
+                    }
+                    else
+                    {
+                        initN = SSAMatrix.concatVertically(optSSrc.Pn, optSSrc.Ps);
+                    }
+                    optNSrc = runRestarts(pool, par, data, true, initN, seedRng, budget);
                 }
             }
+            finally
+            {
+                Parallel.shutdown(pool);
+            }
+
+            if(par.isSinglePrecision() && !stopped)
+            {
+                appendToLog("Refining the results in double precision...");
+                optSSrc = refine(par, data, false, optSSrc, budget);
+                optNSrc = refine(par, data, true, optNSrc, budget);
+            }
 
             // now put results of both optimizations together
-            int n = data.getNumberOfDimensions();
+            int n = data.getNumberOfReducedDimensions();
             SSAMatrix Mix = SSAMatrix.solve(SSAMatrix.concatVertically(optSSrc.Ps, optNSrc.Pn), SSAMatrix.eye(n));
             // basis for stationary subspace
             SSAMatrix Bs = Mix.getRange(0, n, 0, optSSrc.d);
@@ -392,38 +775,31 @@ public class SSA
              opt.loss_n = -optNSrc.loss;
              opt.iterations_s = optSSrc.iterations;
              opt.iterations_n = optNSrc.iterations;
+             opt.budgetExhausted = budget.exhausted;
+             if(opt.budgetExhausted)
+             {
+                 appendToLog("The iteration or time limit has been reached; the result may not have converged.");
+             }
              return opt;
         }
         else if(par.isUseMean()) {
             // use only mean; SSA as an eigenvalue problem
             appendToLog("Only mean should be used; Solving SSA as an eigenvalue problem.");
 
-            SSAMatrix mu[] = new SSAMatrix[data.mu.length];
-
-            int n = data.getNumberOfDimensions();
+            int n = data.getNumberOfReducedDimensions();
             int d = par.getNumberOfStationarySources();
 
-            // prepare matrix H on which we want to solve the eigenvalue problem
-            SSAMatrix H = SSAMatrix.zeros(n, n);
-            for(int i = 0; i < data.mu.length; i++)
-            {
-                // whiten means; assume identity covariance matrix
-                //mu[i] = data.W.mmul(data.mu[i].sub(data.muall));
-                mu[i] = data.mu[i].sub(data.muall);
-                // add mu'*mu to H
-                H.addi(mu[i].mmul(mu[i].transpose()).muli(data.epochSizes[i]));
-            }
-
-            // solve eigenvalue problem
-            SSAMatrix E[] = H.symmetricEigenvectors();
-            // the eigenvectors are in the columns and are our projection directions; we need them
-            // in the rows in our projection matrices
-            SSAMatrix B = E[0].transpose();
+            // eigenvalue problem on H = sum_i w_i*mu_i*mu_i' with the centered means (assuming
+            // an identity covariance matrix); only the d smallest or n - d largest eigenvectors
+            // are computed if possible
+            MeanEigensolver solver = new MeanEigensolver(data);
+            solver.solve(d);
+            // the projection directions are in the rows of B, which is orthogonal
+            SSAMatrix B = SSAWorkspace.toMatrix(solver.B, n, n);
             // loss_s is the sum of the eigenvalues for the stationary subspace
-            SSAMatrix diag = E[1].diag();
-            double loss_s = diag.getRange(0, d, 0, 1).sum();
+            double loss_s = solver.lossS;
             // loss_n is the sum of the eigenvalues for the non-stationary subspace
-            double loss_n = diag.getRange(d, n, 0, 1).sum();
+            double loss_n = solver.lossN;
             // Now normalize losses
             int k_s = data.mu.length * d; // degrees of freedom of chi^2 distribution
             int k_n = data.mu.length * (n - d);
@@ -434,8 +810,8 @@ public class SSA
             SSAMatrix Ps = B.getRange(0, d, 0, n);
             // projection matrix for non-stationary subspace
             SSAMatrix Pn = B.getRange(d, n, 0, n);
-            // mixing matrix is the inverse of B
-            SSAMatrix Mix = SSAMatrix.solve(B, SSAMatrix.eye(n));
+            // mixing matrix is the inverse of B, i.e. its transpose
+            SSAMatrix Mix = B.transpose();
             // basis for stationary subspace
             SSAMatrix Bs = Mix.getRange(0, n, 0, d);
             // basis for non-stationary subspace
@@ -465,112 +841,584 @@ public class SSA
     }
 
     /**
-     * Computes the objective function (and optionally the gradient)
+     * Runs all restarts of one optimization phase (on the threads of the given pool, if it is not null)
+     * and returns the best result. Each restart gets its own random number generator, whose seed is
+     * drawn from the global one before the restarts are started; thus the result does not depend on
+     * the number of threads.
      *
-     * @param n number of dimensions
-     * @param d number of stationary sources
-     * @param S array with covariance matrices over all epochs
-     * @param mu array with means over all epochs
-     * @param M antisymmetric matrix such that the current rotation matrix is exp(M) (if M == null a zero matrix is assumed)
-     * @param calcGradient set this to true if the gradient should also be calculated
-     * @param useMean if false, the objective function without the mean is used
+     * @param pool thread pool (if null, the restarts are run one after another)
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param init initialization for the first restart (if null, it is initialized randomly as well)
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @param budget iteration and time limits
+     * @return result with the smallest loss
+     */
+    private Results runRestarts(ExecutorService pool, final SSAParameters par, final Data data,
+                                final boolean optNSources, final SSAMatrix init, Random seedRng, Budget budget)
+    {
+        SSAMatrix inits[] = initializations(par, data, optNSources, init, init != null, seedRng);
+        if(par.getRoundIterations() > 0 && par.getNumberOfRestarts() > 1)
+        {
+            return runSuccessiveHalving(pool, par, data, optNSources, inits, seedRng, budget);
+        }
+
+        List<Callable<Results>> tasks = new ArrayList<Callable<Results>>();
+        for(int i = 0; i < par.getNumberOfRestarts(); i++)
+        {
+            tasks.add(restartTask(par, data, optNSources, inits[i], nextSeed(seedRng), i, budget));
+        }
+        return bestRestart(Parallel.submitAll(pool, tasks), optNSources);
+    }
+
+    /**
+     * Runs the restarts of both optimization phases on the threads of the given pool. The random
+     * restarts of the optimization of the n-sources are queued right behind the ones of the
+     * s-sources, so they use the threads which are not busy with the s-sources any more; only
+     * the first restart of the n-sources, which starts from the solution for the s-sources, has
+     * to wait for the s-sources. The seeds are drawn in the same order as by runRestarts() for
+     * one phase after another, so the results are the same.
      *
-     * @return array of matrices: 1x1 matrix with the loss at exp(M) at index 0 and optionally
-     *         the gradient at exp(M) w.r.t. M at index 1 (only if calcGradient was set to true) and exp(M) at index 2
+     * @param pool thread pool
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param initS initialization for the first restart of the s-sources (if null, it is initialized randomly as well)
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @param budget iteration and time limits
+     * @return best results for the s-sources (index 0) and the n-sources (index 1)
      */
-    public SSAMatrix[] objectiveFunction(       int n,
-                                                int d,
-                                                SSAMatrix S[],
-                                                SSAMatrix mu[],
-                                                int epochSizes[],
-                                                SSAMatrix M,
-                                                boolean calcGradient,
-                                                boolean useMean)
+    private Results[] runPipelined(ExecutorService pool, SSAParameters par, Data data, SSAMatrix initS, Random seedRng,
+                                   Budget budget)
     {
-        double loss = 0.0;
-        SSAMatrix gradient = null;
+        int restarts = par.getNumberOfRestarts();
+        SSAMatrix initsS[] = initializations(par, data, false, initS, initS != null, seedRng);
+        List<Callable<Results>> sTasks = new ArrayList<Callable<Results>>();
+        for(int i = 0; i < restarts; i++)
+        {
+            sTasks.add(restartTask(par, data, false, initsS[i], nextSeed(seedRng), i, budget));
+        }
+        // the first restart of the n-sources starts from the warm start or from the solution for the s-sources
+        SSAMatrix initN = (par.getWarmStartPn() != null && data.getReduction() == null) ? rewhiten(data, par.getWarmStartPn()) : null;
+        SSAMatrix initsN[] = initializations(par, data, true, initN, true, seedRng);
+        long nSeeds[] = new long[restarts];
+        for(int i = 0; i < restarts; i++)
+        {
+            nSeeds[i] = nextSeed(seedRng);
+        }
+        List<Callable<Results>> nTasks = new ArrayList<Callable<Results>>();
+        for(int i = (initN == null) ? 1 : 0; i < restarts; i++)
+        {
+            nTasks.add(restartTask(par, data, true, initsN[i], nSeeds[i], i, budget));
+        }
 
-        // rotated covariance matrices and means
-        Snew = new SSAMatrix[S.length];
-        if(useMean)
-	        munew = new SSAMatrix[mu.length];
+        List<Future<Results>> sFutures = Parallel.submitAll(pool, sTasks);
+        List<Future<Results>> nFutures = Parallel.submitAll(pool, nTasks);
+        Results optSSrc = bestRestart(sFutures, false);
 
-        //int n = data.getNumberOfDimensions();
+        appendToLog("Optimizing the non-stationarity of the n-sources...");
+        if(initN == null)
+        {
+            // the first restart starts from the solution for the s-sources; it is queued on the
+            // pool as well and is run in this thread if no thread has picked it up yet. If the
+            // optimization has been stopped, an empty result keeps the places of the other restarts
+            List<Callable<Results>> first = new ArrayList<Callable<Results>>();
+            if(stopped)
+            {
+                first.add(new Callable<Results>() {
+                    public Results call() {
+                        return null;
+                    }
+                });
+            }
+            else
+            {
+                first.add(restartTask(par, data, true, SSAMatrix.concatVertically(optSSrc.Pn, optSSrc.Ps), nSeeds[0], 0, budget));
+            }
+            nFutures.add(0, Parallel.submitAll(pool, first).get(0));
+        }
+        Results optNSrc = bestRestart(nFutures, true);
+        return new Results[]{optSSrc, optNSrc};
+    }
 
-        // only initialize variable gradient if it is needed later
-        if(calcGradient)
+    /**
+     * Returns the initializations of the restarts of one optimization phase: init for the first
+     * restart and, if par.getNumberOfCandidates() is positive, the screened candidates for the
+     * other restarts (see screenCandidates()). The entries of restarts which are initialized with
+     * a random rotation of their own are null. The seed of the screening is drawn before the seeds
+     * of the restarts, and only if the screening is enabled.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param init initialization for the first restart (may be null)
+     * @param firstGiven the first restart does not need a candidate (e.g. because it starts from init)
+     * @param seedRng generator for the seeds (if null, the global one is used)
+     * @return initializations, one per restart
+     */
+    private SSAMatrix[] initializations(SSAParameters par, Data data, boolean optNSources, SSAMatrix init,
+                                        boolean firstGiven, Random seedRng)
+    {
+        int restarts = par.getNumberOfRestarts();
+        SSAMatrix inits[] = new SSAMatrix[restarts];
+        inits[0] = init;
+        int first = firstGiven ? 1 : 0;
+        if(par.getNumberOfCandidates() > 0 && first < restarts)
         {
-            gradient = SSAMatrix.zeros(d, n);
+            SSAMatrix candidates[] = screenCandidates(par, data, optNSources, restarts - first, nextSeed(seedRng));
+            System.arraycopy(candidates, 0, inits, first, candidates.length);
         }
+        return inits;
+    }
 
-        // calculate rotation matrix
-        SSAMatrix Rcomplete;
-        if(M == null)
+    /**
+     * Draws par.getNumberOfCandidates() random initializations and returns the given number of
+     * them with the smallest loss. The candidates are drawn in pairs: a Haar-uniform orthogonal
+     * matrix Q (see MathFunctions.randOrth()) and Q with its rows shifted cyclically by d, whose
+     * first d rows span a subspace orthogonal to (or, for d > n/2, as far as possible from) the
+     * one of the first d rows of Q. The loss of each candidate is evaluated once, without the
+     * gradient. The candidates are then picked by increasing loss, skipping those whose squared
+     * subspace distance d - ||Q_a*Q_b'||_F^2 (of the first d rows) to a candidate picked before is
+     * less than the expected distance d*(n-d)/n of two random subspaces; if this leaves too few
+     * candidates, the best of the skipped ones are added.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param count number of initializations
+     * @param seed seed of the random number generator for the candidates
+     * @return initial demixing matrices, by increasing loss of the picked candidates
+     */
+    private SSAMatrix[] screenCandidates(SSAParameters par, Data data, boolean optNSources, int count, long seed)
+    {
+        int n = data.getNumberOfReducedDimensions();
+        int d = optNSources ? (n - par.getNumberOfStationarySources()) : par.getNumberOfStationarySources();
+        int m = Math.max(par.getNumberOfCandidates(), count);
+        Random rng = new Random(seed);
+
+        double Q[][] = new double[m][];
+        for(int c = 0; c < m; c += 2)
         {
-            Rcomplete = SSAMatrix.eye(n);
+            Q[c] = SSAWorkspace.toArray(MathFunctions.randOrth(n, rng));
+            if(c + 1 < m)
+            {
+                Q[c + 1] = new double[n*n];
+                for(int i = 0; i < n; i++)
+                {
+                    System.arraycopy(Q[c], ((i + d) % n)*n, Q[c + 1], i*n, n);
+                }
+            }
         }
-        else
+
+        // the candidates are rotations of the whitened data
+        SSAWorkspace ws = new SSAWorkspace(data, data.W, d, par.isUseMean(), null, 1, par.isSinglePrecision());
+        final double loss[] = new double[m];
+        Integer order[] = new Integer[m];
+        for(int c = 0; c < m; c++)
         {
-            Rcomplete = M.expm();
+            loss[c] = optNSources ? -ws.evaluateRotation(Q[c]) : ws.evaluateRotation(Q[c]);
+            order[c] = c;
         }
-        //SSAMatrix R = Rcomplete.getRange(0, d, 0, n);
-        SSAMatrix Rtcomplete = Rcomplete.transpose();
+        // the sort is stable, so ties are resolved by the order in which the candidates were drawn
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(loss[a], loss[b]);
+            }
+        });
 
-        for(int i = 0; i < S.length; i++)
+        double maxOverlap = d - (double)d*(n - d)/n;
+        List<Integer> picked = new ArrayList<Integer>();
+        boolean used[] = new boolean[m];
+        for(int pass = 0; pass < 2 && picked.size() < count; pass++)
         {
-            // rotate covariance matrix and mean vector in epoch i
-            SSAMatrix RScomplete = Rcomplete.mmul(S[i]); // R multiplied only from left side (needed for gradient)
-            SSAMatrix RSRtcomplete = RScomplete.mmul(Rtcomplete); // rotated covariance matrix
-            SSAMatrix Rmucomplete = null;
-            if(useMean)
-            	Rmucomplete = Rcomplete.mmul(mu[i]); // rotated mean
+            for(int r = 0; r < m && picked.size() < count; r++)
+            {
+                int c = order[r];
+                if(used[c] || (pass == 0 && overlapsPicked(Q, picked, c, d, n, maxOverlap)))
+                {
+                    continue;
+                }
+                picked.add(c);
+                used[c] = true;
+            }
+        }
 
-            // truncate to the stationary subspace
-            SSAMatrix RS = RScomplete.getRange(0, d, 0, n);
-            SSAMatrix RSRt = RSRtcomplete.getRange(0, d, 0, d);
-            SSAMatrix Rmu = null;
-            if(useMean)
-            	Rmu = Rmucomplete.getRange(0, d, 0, 1);
+        SSAMatrix inits[] = new SSAMatrix[count];
+        for(int i = 0; i < count; i++)
+        {
+            inits[i] = SSAWorkspace.toMatrix(Q[picked.get(i)], n, n).mmuli(data.W);
+        }
+        appendToLog("Screened " + m + " initializations, " + (optNSources ? "max. objective function value="
+                    + -loss[order[0]] : "min. objective function value=" + loss[order[0]]));
+        return inits;
+    }
 
-            Snew[i] = RSRtcomplete;
-            if(useMean)
-	            munew[i] = Rmucomplete;
+    /**
+     * Checks whether the first d rows of a candidate span a subspace close to the one of a
+     * candidate which has been picked before, i.e. whether ||Q_a*Q_b'||_F^2 exceeds maxOverlap.
+     */
+    private static boolean overlapsPicked(double Q[][], List<Integer> picked, int c, int d, int n, double maxOverlap)
+    {
+        for(int p = 0; p < picked.size(); p++)
+        {
+            double A[] = Q[c];
+            double B[] = Q[picked.get(p)];
+            double overlap = 0;
+            for(int i = 0; i < d; i++)
+            {
+                for(int j = 0; j < d; j++)
+                {
+                    double dot = 0;
+                    for(int k = 0; k < n; k++)
+                    {
+                        dot += A[i*n + k]*B[j*n + k];
+                    }
+                    overlap += dot*dot;
+                }
+            }
+            if(overlap > maxOverlap)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the task which runs one restart.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param init initialization (if null, it is initialized randomly)
+     * @param seed seed of the random number generator for the initialization
+     * @param restart index of the restart
+     * @param budget iteration and time limits
+     * @return task
+     */
+    private Callable<Results> restartTask(final SSAParameters par, final Data data, final boolean optNSources,
+                                          final SSAMatrix init, final long seed, final int restart, final Budget budget)
+    {
+        return new Callable<Results>() {
+            public Results call() {
+                if(restart > 0 && stopped)
+                {
+                    // optimization has been stopped before this restart started
+                    return null;
+                }
+                if(restart > 0 && budget.expired())
+                {
+                    // no time left for this restart
+                    budget.exhausted = true;
+                    return null;
+                }
+                return optimizeOnce(par, data, optNSources, init, new Random(seed), restart, budget);
+            }
+        };
+    }
 
-            double add = -Math.log(MathFunctions.det(RSRt));
-            //loss += -Math.log(MathFunctions.det(RSRt));
-            if(useMean)
+    /**
+     * Waits for the restarts of one optimization phase and returns the best result.
+     *
+     * @param futures results of the restarts in the order of the restarts
+     * @param optNSources the n-sources are optimized instead of the s-sources
+     * @return result with the smallest loss
+     */
+    private Results bestRestart(List<Future<Results>> futures, boolean optNSources)
+    {
+        // collect the results in the order of the restarts
+        Results opt = new Results(null, null, null, null, Double.POSITIVE_INFINITY, false, 0, 0, 0, false, false, 0, null, null);
+        for(int i = 0; i < futures.size(); i++)
+        {
+            Results buf = Parallel.get(futures.get(i));
+            if(buf == null)
+            {
+                continue;
+            }
+            if(buf.loss < opt.loss)
             {
-                //loss += Rmu.mul(Rmu).sum();
-                add += Rmu.mul(Rmu).sum();
+                opt = buf;
+            }
+            if(logger != null)
+            {
+                // show progress
+                if(optNSources)
+                {
+                    appendToLog("Repetition " + (i+1) + ": iterations=" + buf.iterations + ", max. objective function value=" + -buf.loss);
+                }
+                else
+                {
+                    appendToLog("Repetition " + (i+1) + ": iterations=" + buf.iterations + ", min. objective function value=" + buf.loss);
+                }
             }
-            loss += ((double)epochSizes[i]) * add;
+        }
+
+        return opt;
+    }
+
+    /**
+     * Runs the restarts of one optimization phase with successive halving: in every round, all
+     * remaining restarts are advanced by par.getRoundIterations() iterations (on the threads of the
+     * given pool, if it is not null), and the fraction par.getEliminationRate() of them with the
+     * largest loss is dropped. The last remaining restart is run to convergence. As in
+     * runRestarts(), the random seeds are drawn before the restarts are started, so the result does
+     * not depend on the number of threads.
+     *
+     * @param pool thread pool (if null, the restarts are run one after another)
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param optNSources optimize the n-sources instead of the s-sources
+     * @param inits initializations of the restarts (see initializations(); null entries are initialized randomly)
+     * @param seedRng generator for the seeds of the restarts (if null, the global one is used)
+     * @param budget iteration and time limits (the time is shared by all restarts of the phase)
+     * @return result of the last remaining restart
+     */
+    private Results runSuccessiveHalving(ExecutorService pool, final SSAParameters par, final Data data,
+                                         final boolean optNSources, SSAMatrix inits[], Random seedRng,
+                                         final Budget budget)
+    {
+        final int roundIterations = par.getRoundIterations();
+        long deadline = budget.timed ? budget.share(par.getNumberOfRestarts()) : 0;
+        List<Restart> active = new ArrayList<Restart>();
+        for(int i = 0; i < par.getNumberOfRestarts(); i++)
+        {
+            Restart run = new Restart(inits[i]);
+            run.seed = nextSeed(seedRng);
+            run.rng = new Random(run.seed);
+            run.index = i;
+            run.timed = budget.timed;
+            run.deadline = deadline;
+            active.add(run);
+        }
 
-            // calculate gradient if needed
-            if(calcGradient)
+        // the restarts keep their workspaces and threads from one round to the next
+        List<Restart> all = new ArrayList<Restart>(active);
+        try
+        {
+            for(int round = 1; active.size() > 1 && !stopped; round++)
             {
-                //gradient.subi(MathFunctions.inv(RSRt).mmul(RS));
-                gradient.subi(MathFunctions.inv(RSRt).mmul(RS).muli((double)epochSizes[i]));
-                if(useMean)
+                if(budget.expired())
+                {
+                    // no time left for further rounds; the best restart so far is finished
+                    budget.exhausted = true;
+                    break;
+                }
+                List<Callable<Restart>> tasks = new ArrayList<Callable<Restart>>();
+                for(int i = 0; i < active.size(); i++)
+                {
+                    final Restart run = active.get(i);
+                    if(run.converged || run.iterations >= budget.maxIterations)
+                    {
+                        continue;
+                    }
+                    tasks.add(new Callable<Restart>() {
+                        public Restart call() {
+                            if(stopped)
+                            {
+                                return run;
+                            }
+                            if(run.B == null)
+                            {
+                                run.B = initialDemixingMatrix(par, data, null, run.rng);
+                            }
+                            advance(par, data, optNSources, run, roundIterations, budget);
+                            return run;
+                        }
+                    });
+                }
+                Parallel.invokeAll(pool, tasks);
+
+                // keep the restarts with the smallest loss (the sort is stable, so ties are
+                // resolved by the order)
+                Collections.sort(active, new Comparator<Restart>() {
+                    public int compare(Restart a, Restart b) {
+                        return Double.compare(a.loss, b.loss);
+                    }
+                });
+                int keep = (int)Math.ceil(active.size()*(1.0 - par.getEliminationRate()));
+                keep = Math.max(1, Math.min(active.size() - 1, keep));
+                appendToLog("Round " + round + ": iterations=" + roundIterations + ", "
+                            + (optNSources ? "max. objective function value=" + -active.get(0).loss
+                                           : "min. objective function value=" + active.get(0).loss)
+                            + ", " + keep + " of " + active.size() + " restarts kept");
+                for(int i = keep; i < active.size(); i++)
                 {
-                    gradient.addi(Rmu.mmul(mu[i].transpose()).muli((double)epochSizes[i]));
+                    // the workspaces and threads of the eliminated restarts are not needed any more
+                    active.get(i).release();
                 }
+                active = new ArrayList<Restart>(active.subList(0, keep));
+            }
+
+            Restart best = active.get(0);
+            if(best.B == null && !stopped)
+            {
+                // the rounds have been skipped
+                best.B = initialDemixingMatrix(par, data, null, best.rng);
+            }
+            if(best.B == null)
+            {
+                // optimization has been stopped before the first round
+                return new Results(null, null, null, null, Double.POSITIVE_INFINITY, false, 0, 0, 0, false, false,
+                                   0, null, null);
+            }
+            if(!best.converged && !stopped)
+            {
+                advance(par, data, optNSources, best, Integer.MAX_VALUE, budget);
+            }
+            if(optNSources)
+            {
+                appendToLog("Remaining restart: iterations=" + best.iterations
+                            + ", max. objective function value=" + -best.loss);
+            }
+            else
+            {
+                appendToLog("Remaining restart: iterations=" + best.iterations
+                            + ", min. objective function value=" + best.loss);
             }
+            Results results = createResults(par, data, optNSources, best);
+            results.budgetExhausted = budget.exhausted;
+            return results;
         }
+        finally
+        {
+            for(int i = 0; i < all.size(); i++)
+            {
+                all.get(i).release();
+            }
+        }
+    }
+
+    /**
+     * Draws the seed for the random number generator of a restart.
+     *
+     * @param seedRng generator for the seeds (if null, the global one is used)
+     */
+    private static long nextSeed(Random seedRng)
+    {
+        return (seedRng == null) ? SSAMatrix.nextRandomSeed() : seedRng.nextLong();
+    }
 
-        if(!calcGradient)
+    /**
+     * Computes the covariance matrices and means of the epochs (see Data.epochize()) and checks
+     * the number of dimensions which are left after the projection onto the principal components.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param d largest number of stationary sources
+     */
+    private void epochize(SSAParameters par, Data data, int d)
+    {
+        if(data.getEpochType() != Data.EPOCHS_SPECIFIED_MOMENTS)
         {
-            // only return loss
-            return new SSAMatrix[]{new SSAMatrix(new double[][]{{loss}}), null, Rcomplete};
+            appendToLog("Calculating covariance matrices and means...");
         }
-        else
+        data.epochize(par.isUseCovariance());
+        checkReducedDimensions(data, d);
+    }
+
+    /**
+     * Checks whether the number of stationary sources is smaller than the number of dimensions
+     * which are left after the data has been projected onto its principal components.
+     *
+     * @param data class containing the data (the moments have to be computed already)
+     * @param d largest number of stationary sources
+     */
+    private void checkReducedDimensions(Data data, int d)
+    {
+        if(d >= data.getNumberOfReducedDimensions())
+        {
+            throw new IllegalArgumentException("The number of stationary sources must be smaller than the number of principal components ("
+                                               + data.getNumberOfReducedDimensions() + ").");
+        }
+    }
+
+    /**
+     * Maps the projections and bases of a result back to the original channels, if the data has
+     * been projected onto its principal components: Ps and Pn are multiplied by the projection
+     * from the right, Bs and Bn by its transpose from the left.
+     *
+     * @param data class containing the data
+     * @param results result in the reduced dimensions
+     * @return the same Results object
+     */
+    private static Results restoreDimensions(Data data, Results results)
+    {
+        SSAMatrix R = data.getReduction();
+        if(R == null || results.Ps == null)
+        {
+            return results;
+        }
+        SSAMatrix Rt = R.transpose();
+        results.Ps = results.Ps.mmul(R);
+        results.Pn = results.Pn.mmul(R);
+        results.Bs = Rt.mmul(results.Bs);
+        results.Bn = Rt.mmul(results.Bn);
+        return results;
+    }
+
+    /**
+     * Computes an initial demixing matrix for the given data from a projection of a previous
+     * solution, e.g. one which has been computed on earlier data. In whitened coordinates, the
+     * first rows of the demixing matrix are an orthonormal basis of the subspace which is spanned
+     * by the rows of P, and the remaining rows are an orthonormal basis of its orthogonal
+     * complement. Since the objective function only depends on the subspaces, this is as good a
+     * starting point as P itself.
+     *
+     * If the data has been projected onto its principal components, P is projected as well and
+     * the demixing matrix is in the reduced dimensions.
+     *
+     * @param data class containing the data (the moments have to be computed already)
+     * @param P m x D projection matrix
+     * @return D x D demixing matrix whose first m rows span the same subspace as P
+     */
+    public SSAMatrix rewhiten(Data data, SSAMatrix P)
+    {
+        int n = data.getNumberOfReducedDimensions();
+        if(data.getReduction() != null)
+        {
+            P = P.mmul(data.getReduction().transpose());
+        }
+        int m = P.getRows();
+        // rows of P in whitened coordinates: P*inv(W)
+        SSAMatrix A = SSAMatrix.solve(data.W.transpose(), P.transpose()).transpose();
+        // the eigenvectors of A'*A with the m largest eigenvalues span the rows of A, the others
+        // (with eigenvalue zero) span the orthogonal complement
+        SSAMatrix V = A.transpose().mmul(A).symmetricEigenvectors()[0];
+        int order[] = new int[n];
+        for(int i = 0; i < n; i++)
         {
-            // concatenate (n-d) x n zero matrix to gradient (gradient is square afterwards)
-            gradient = SSAMatrix.concatVertically(gradient.muli(2.0), SSAMatrix.zeros(n - d, n));
-            // calculate the gradient at exp(M) w.r.t. M
-            gradient = gradient.mmul(Rcomplete.transpose()).subi(Rcomplete.mmul(gradient.transpose()));
-            // return loss and gradient
-            return new SSAMatrix[]{new SSAMatrix(new double[][]{{loss}}), gradient, Rcomplete};
+            order[i] = (i < m) ? (n - m + i) : (i - m);
         }
+        return V.getColumns(order).transpose().mmul(data.W);
+    }
+
+    /**
+     * Computes the objective function (and optionally the gradient)
+     *
+     * @param n number of dimensions
+     * @param d number of stationary sources
+     * @param S array with covariance matrices over all epochs
+     * @param mu array with means over all epochs
+     * @param M antisymmetric matrix such that the current rotation matrix is exp(M) (if M == null a zero matrix is assumed)
+     * @param calcGradient set this to true if the gradient should also be calculated
+     * @param useMean if false, the objective function without the mean is used
+     *
+     * @return array of matrices: 1x1 matrix with the loss at exp(M) at index 0 and optionally
+     *         the gradient at exp(M) w.r.t. M at index 1 (only if calcGradient was set to true) and exp(M) at index 2
+     */
+    public SSAMatrix[] objectiveFunction(       int n,
+                                                int d,
+                                                SSAMatrix S[],
+                                                SSAMatrix mu[],
+                                                int epochSizes[],
+                                                SSAMatrix M,
+                                                boolean calcGradient,
+                                                boolean useMean)
+    {
+        SSAWorkspace ws = new SSAWorkspace(S, mu, epochSizes, SSAMatrix.eye(n), d, useMean, null, 1);
+        double loss = ws.evaluate(M == null ? null : SSAWorkspace.toArray(M), calcGradient);
+        SSAMatrix gradient = calcGradient ? SSAWorkspace.toMatrix(ws.getGradient(), n, n) : null;
+        return new SSAMatrix[]{new SSAMatrix(new double[][]{{loss}}), gradient, ws.getRotation()};
     }
 
     /**
@@ -603,6 +1451,29 @@ public class SSA
         this.stopped = true;
     }
     
+    /**
+     * Adds a listener which is called after every iteration of the optimization, with the loss, the
+     * gradient norm, the line search and the timings of the iteration. The listeners are called
+     * from the threads of the restarts, but never concurrently. If there are no listeners, the
+     * optimizers do not measure the timings.
+     *
+     * @param listener listener
+     */
+    public void addIterationListener(IterationListener listener)
+    {
+        iterationListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener which has been added by addIterationListener().
+     *
+     * @param listener listener
+     */
+    public void removeIterationListener(IterationListener listener)
+    {
+        iterationListeners.remove(listener);
+    }
+
     /**
      * Appends a message to the log.
      *
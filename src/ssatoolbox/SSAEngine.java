@@ -0,0 +1,128 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs SSA optimizations as independent jobs on a fixed number of threads, e.g. for a service
+ * which fits several data sets at once. A job works on snapshots of the data and the parameters
+ * which are taken when it is submitted, so the given objects may be changed or reused right
+ * away, and it has its own SSA instance and random number generator for the seeds of its
+ * restarts. Thus, jobs do not share any mutable state, and the result of a job with a given seed
+ * does not depend on the other jobs. The methods of the engine may be called from several
+ * threads at once.
+ *
+ * The threads of the restarts and epochs of a job (see SSAParameters) are created per job in
+ * addition to the threads of the engine.
+ */
+public class SSAEngine
+{
+    private final ExecutorService pool;
+
+    /**
+     * Creates a new engine.
+     *
+     * @param numberOfJobs number of jobs which are run at the same time
+     */
+    public SSAEngine(int numberOfJobs)
+    {
+        if(numberOfJobs < 1) throw new IllegalArgumentException("Number of jobs must be positive");
+
+        pool = Executors.newFixedThreadPool(numberOfJobs, Parallel.daemonThreads("ssa-job"));
+    }
+
+    /**
+     * Submits a job whose seed is drawn from the global random number generator (see
+     * SSAMatrix.setRandomSeed()) in the calling thread.
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @return result of the job (cancelling it stops the optimization)
+     */
+    public Future<Results> submit(SSAParameters par, Data data)
+    {
+        return submit(par, data, SSAMatrix.nextRandomSeed());
+    }
+
+    /**
+     * Submits a job. With the same data, parameters and seed, the result is the same as the one
+     * of SSA.optimize() after SSAMatrix.setRandomSeed(seed).
+     *
+     * @param par class containing the SSA parameters
+     * @param data class containing the data
+     * @param seed seed of the random number generator for the seeds of the restarts
+     * @return result of the job (cancelling it stops the optimization)
+     */
+    public Future<Results> submit(SSAParameters par, Data data, final long seed)
+    {
+        final SSAParameters parSnapshot = new SSAParameters(par);
+        parSnapshot.setWarmStart(copyOf(par.getWarmStartPs()), copyOf(par.getWarmStartPn()));
+        final Data dataSnapshot = new Data(data);
+        final SSA ssa = new SSA();
+        FutureTask<Results> job = new FutureTask<Results>(new Callable<Results>() {
+            public Results call() {
+                return ssa.optimize(parSnapshot, dataSnapshot, new Random(seed));
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                ssa.stop();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        pool.execute(job);
+        return job;
+    }
+
+    /**
+     * Stops accepting jobs; the submitted jobs are still run.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Copies a matrix (null stays null).
+     */
+    private static SSAMatrix copyOf(SSAMatrix M)
+    {
+        return (M == null) ? null : new SSAMatrix(M);
+    }
+}
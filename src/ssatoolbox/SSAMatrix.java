@@ -788,16 +788,29 @@ public class SSAMatrix
                 return new SSAMatrix(cern.colt.matrix.DoubleFactory2D.dense.random(rows, columns));
         }*/
 
+        return rand(rows, columns, random);
+    }
+
+    /**
+     * Generates a random matrix (each entry is drawn uniformly from (0, 1) ), using the given
+     * random number generator instead of the global one.
+     *
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param rng random number generator
+     */
+    public static SSAMatrix rand(int rows, int columns, java.util.Random rng)
+    {
         double randMatrix[][] = new double[rows][columns];
         for(int i = 0; i < rows; i++)
         {
             for(int j = 0; j < columns; j++)
             {
-                randMatrix[i][j] = random.nextDouble();
+                randMatrix[i][j] = rng.nextDouble();
             }
         }
         
-        return new SSAMatrix(randMatrix); // should not happen
+        return new SSAMatrix(randMatrix);
     }
 
     /**
@@ -809,6 +822,18 @@ public class SSAMatrix
     {
         random.setSeed(seed);
     }
+
+    /**
+     * Draws a seed for a new random number generator from the global random number generator.
+     * This makes it possible to give each of several parallel computations its own random number
+     * generator, while the results still only depend on the seed set by setRandomSeed().
+     *
+     * @return seed
+     */
+    public static long nextRandomSeed()
+    {
+        return random.nextLong();
+    }
     
     /**
      * Calculates the maximum norm of the matrix.
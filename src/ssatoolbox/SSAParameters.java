@@ -49,6 +49,38 @@ public class SSAParameters {
      */
     public SSAParameters() { }
 
+    /**
+     * Creates a copy of the given parameters (without the property change listeners).
+     *
+     * @param par parameters to copy
+     */
+    public SSAParameters(SSAParameters par) {
+        numberOfStationarySources = par.numberOfStationarySources;
+        numberOfRestarts = par.numberOfRestarts;
+        numberOfThreads = par.numberOfThreads;
+        numberOfEpochThreads = par.numberOfEpochThreads;
+        numberOfLineSearchThreads = par.numberOfLineSearchThreads;
+        optimizer = par.optimizer;
+        retraction = par.retraction;
+        geodesicLineSearch = par.geodesicLineSearch;
+        pipelinePhases = par.pipelinePhases;
+        roundIterations = par.roundIterations;
+        eliminationRate = par.eliminationRate;
+        numberOfCandidates = par.numberOfCandidates;
+        batchSize = par.batchSize;
+        learningRate = par.learningRate;
+        learningRateDecay = par.learningRateDecay;
+        numberOfPasses = par.numberOfPasses;
+        maxIterations = par.maxIterations;
+        timeLimit = par.timeLimit;
+        singlePrecision = par.singlePrecision;
+        warmStartPs = par.warmStartPs;
+        warmStartPn = par.warmStartPn;
+        useMean = par.useMean;
+        useCovariance = par.useCovariance;
+        ignoreDeterminacy = par.ignoreDeterminacy;
+    }
+
     /** Number of stationary sources */
     protected int numberOfStationarySources = -1;
 
@@ -124,6 +156,595 @@ public class SSAParameters {
         }
     }
     
+    /** Number of threads used to run the restarts in parallel */
+    protected int numberOfThreads = 1;
+
+    /**
+     * Returns the number of threads which are used to run the restarts in parallel.
+     *
+     * @return number of threads
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * Sets the number of threads which are used to run the restarts in parallel.
+     * The results do not depend on the number of threads.
+     *
+     * @param numberOfThreads number of threads (1 runs all restarts one after another)
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        if(numberOfThreads < 1) throw new IllegalArgumentException("Number of threads must be positive");
+
+        if(numberOfThreads != this.numberOfThreads) {
+            int oldval = this.numberOfThreads;
+            this.numberOfThreads = numberOfThreads;
+            propertyChangeSupport.firePropertyChange("numberOfThreads", oldval, numberOfThreads);
+        }
+    }
+
+    /** Number of threads used to evaluate the objective function on blocks of epochs in parallel */
+    protected int numberOfEpochThreads = 1;
+
+    /**
+     * Returns the number of threads which are used to evaluate the objective function on blocks of
+     * epochs in parallel.
+     *
+     * @return number of threads
+     */
+    public int getNumberOfEpochThreads() {
+        return numberOfEpochThreads;
+    }
+
+    /**
+     * Sets the number of threads which are used to evaluate the objective function on blocks of
+     * epochs in parallel. This pays off for data sets with many epochs. The epochs are split into
+     * one block per thread, so the result is deterministic for a fixed number of threads, but may
+     * differ in the last digits for different numbers of threads. If the restarts are run in
+     * parallel as well, every restart uses its own threads.
+     *
+     * @param numberOfEpochThreads number of threads (1 evaluates all epochs in the calling thread)
+     */
+    public void setNumberOfEpochThreads(int numberOfEpochThreads) {
+        if(numberOfEpochThreads < 1) throw new IllegalArgumentException("Number of threads must be positive");
+
+        if(numberOfEpochThreads != this.numberOfEpochThreads) {
+            int oldval = this.numberOfEpochThreads;
+            this.numberOfEpochThreads = numberOfEpochThreads;
+            propertyChangeSupport.firePropertyChange("numberOfEpochThreads", oldval, numberOfEpochThreads);
+        }
+    }
+
+    /** Number of step sizes which the line search evaluates concurrently */
+    protected int numberOfLineSearchThreads = 1;
+
+    /**
+     * Returns the number of threads on which the line search evaluates step sizes concurrently.
+     *
+     * @return number of threads
+     */
+    public int getNumberOfLineSearchThreads() {
+        return numberOfLineSearchThreads;
+    }
+
+    /**
+     * Sets the number of threads on which the backtracking line search of the conjugate gradient
+     * and L-BFGS evaluates step sizes speculatively: instead of trying the step sizes 1, 0.4,
+     * 0.16, ... one after another, it evaluates them in batches of this size and takes the largest
+     * one with a sufficient decrease. The steps are the same as in the sequential line search
+     * (along the geodesic, see setGeodesicLineSearch()), but an iteration with several trials
+     * takes less time. Every thread needs its own d x n matrix per epoch. If the restarts are run
+     * in parallel as well, every restart uses its own threads.
+     *
+     * @param numberOfLineSearchThreads number of threads (1 tries the step sizes one after another)
+     */
+    public void setNumberOfLineSearchThreads(int numberOfLineSearchThreads) {
+        if(numberOfLineSearchThreads < 1) throw new IllegalArgumentException("Number of threads must be positive");
+
+        if(numberOfLineSearchThreads != this.numberOfLineSearchThreads) {
+            int oldval = this.numberOfLineSearchThreads;
+            this.numberOfLineSearchThreads = numberOfLineSearchThreads;
+            propertyChangeSupport.firePropertyChange("numberOfLineSearchThreads", oldval, numberOfLineSearchThreads);
+        }
+    }
+
+    /** Polak-Ribiere conjugate gradient */
+    public static final int OPTIMIZER_CG = 1;
+    /** Limited-memory BFGS */
+    public static final int OPTIMIZER_LBFGS = 2;
+    /** Trust-region Newton method with truncated conjugate gradient */
+    public static final int OPTIMIZER_TRUST_REGION = 3;
+    /** Mini-batch Riemannian Adam, followed by the conjugate gradient on all epochs */
+    public static final int OPTIMIZER_STOCHASTIC = 4;
+    /** Jacobi-style sweeps of plane rotations between the s- and the n-coordinates */
+    public static final int OPTIMIZER_GIVENS = 5;
+
+    /** Optimization algorithm */
+    protected int optimizer = OPTIMIZER_CG;
+
+    /**
+     * Returns the optimization algorithm.
+     *
+     * @return OPTIMIZER_CG, OPTIMIZER_LBFGS, OPTIMIZER_TRUST_REGION, OPTIMIZER_STOCHASTIC or OPTIMIZER_GIVENS
+     */
+    public int getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Sets the optimization algorithm. The conjugate gradient and L-BFGS use the same
+     * backtracking line search and stopping criteria; L-BFGS usually needs fewer iterations than
+     * the conjugate gradient. The trust-region Newton method uses exact second derivatives, which
+     * are more expensive per iteration, but converges quadratically and stops at a much smaller
+     * gradient. The stochastic optimizer is meant for data with very many epochs: it first takes
+     * cheap steps on mini-batches of epochs (see setBatchSize()) and then polishes the solution
+     * with the conjugate gradient on all epochs, so the result is as accurate as with the
+     * conjugate gradient alone. The Givens optimizer does not use gradients: it sweeps over the
+     * planes spanned by one s- and one n-coordinate and minimizes the loss over the angle of the
+     * rotation in each plane, which only changes two rows and columns of every covariance matrix.
+     * It pays off for large n and small d.
+     *
+     * @param optimizer OPTIMIZER_CG (default), OPTIMIZER_LBFGS, OPTIMIZER_TRUST_REGION, OPTIMIZER_STOCHASTIC
+     *                  or OPTIMIZER_GIVENS
+     */
+    public void setOptimizer(int optimizer) {
+        if(optimizer != OPTIMIZER_CG && optimizer != OPTIMIZER_LBFGS && optimizer != OPTIMIZER_TRUST_REGION
+           && optimizer != OPTIMIZER_STOCHASTIC && optimizer != OPTIMIZER_GIVENS)
+            throw new IllegalArgumentException("Unknown optimizer");
+
+        if(optimizer != this.optimizer) {
+            int oldval = this.optimizer;
+            this.optimizer = optimizer;
+            propertyChangeSupport.firePropertyChange("optimizer", oldval, optimizer);
+        }
+    }
+
+    /** Maps antisymmetric matrices to rotations with the matrix exponential */
+    public static final int RETRACTION_EXPM = 1;
+    /** Maps antisymmetric matrices to rotations with the Cayley transform */
+    public static final int RETRACTION_CAYLEY = 2;
+
+    /** Map from antisymmetric matrices to rotations, which is used for the optimization steps */
+    protected int retraction = RETRACTION_EXPM;
+
+    /**
+     * Returns the map from antisymmetric matrices to rotations, which is used for the
+     * optimization steps and the random initializations.
+     *
+     * @return RETRACTION_EXPM or RETRACTION_CAYLEY
+     */
+    public int getRetraction() {
+        return retraction;
+    }
+
+    /**
+     * Sets the map from antisymmetric matrices to rotations, which is used for the optimization
+     * steps and the random initializations. The Cayley transform inv(I - M/2)*(I + M/2) needs only
+     * one linear solve instead of the Pade approximation of the matrix exponential, and agrees
+     * with exp(M) for small steps up to terms of third order.
+     *
+     * @param retraction RETRACTION_EXPM (default) or RETRACTION_CAYLEY
+     */
+    public void setRetraction(int retraction) {
+        if(retraction != RETRACTION_EXPM && retraction != RETRACTION_CAYLEY)
+            throw new IllegalArgumentException("Unknown retraction");
+
+        if(retraction != this.retraction) {
+            int oldval = this.retraction;
+            this.retraction = retraction;
+            propertyChangeSupport.firePropertyChange("retraction", oldval, retraction);
+        }
+    }
+
+    /** Evaluate the line search steps along a decomposed search direction instead of computing matrix exponentials */
+    protected boolean geodesicLineSearch = false;
+
+    /**
+     * Returns whether the line search evaluates the rotations along the geodesic of a decomposed
+     * search direction.
+     *
+     * @return true if the geodesic line search is used
+     */
+    public boolean isGeodesicLineSearch() {
+        return geodesicLineSearch;
+    }
+
+    /**
+     * Sets whether the line search evaluates the rotations along the geodesic of a decomposed
+     * search direction. The search direction is decomposed once per iteration, which makes every
+     * step of the line search much cheaper than a matrix exponential; this pays off for a large
+     * number of dimensions. Both line searches compute the same rotations up to rounding errors.
+     *
+     * @param geodesicLineSearch true to use the geodesic line search
+     */
+    public void setGeodesicLineSearch(boolean geodesicLineSearch) {
+        if(geodesicLineSearch != this.geodesicLineSearch) {
+            boolean oldval = this.geodesicLineSearch;
+            this.geodesicLineSearch = geodesicLineSearch;
+            propertyChangeSupport.firePropertyChange("geodesicLineSearch", oldval, geodesicLineSearch);
+        }
+    }
+
+    /** Start the restarts of the n-sources while the ones of the s-sources are still running */
+    protected boolean pipelinePhases = false;
+
+    /**
+     * Returns whether the restarts of the optimization of the n-sources are started while the
+     * ones of the s-sources are still running.
+     *
+     * @return true if the optimization phases are pipelined
+     */
+    public boolean isPipelinePhases() {
+        return pipelinePhases;
+    }
+
+    /**
+     * Sets whether the restarts of the optimization of the n-sources are started while the ones
+     * of the s-sources are still running. Only the first restart of the n-sources starts from the
+     * solution for the s-sources; the random ones can use the threads which are not busy with the
+     * s-sources any more. The results are the same as without pipelining. This only has an effect
+     * if the restarts are run on several threads and the restart scheduler is disabled.
+     *
+     * @param pipelinePhases true to pipeline the optimization phases
+     */
+    public void setPipelinePhases(boolean pipelinePhases) {
+        if(pipelinePhases != this.pipelinePhases) {
+            boolean oldval = this.pipelinePhases;
+            this.pipelinePhases = pipelinePhases;
+            propertyChangeSupport.firePropertyChange("pipelinePhases", oldval, pipelinePhases);
+        }
+    }
+
+    /** Iterations per round of the restart scheduler (0 runs every restart to convergence) */
+    protected int roundIterations = 0;
+
+    /**
+     * Returns the number of iterations per round of the restart scheduler.
+     *
+     * @return number of iterations per round (0 if the scheduler is disabled)
+     */
+    public int getRoundIterations() {
+        return roundIterations;
+    }
+
+    /**
+     * Sets the number of iterations per round of the restart scheduler. If it is positive, the
+     * restarts are not run to convergence one by one; instead, all restarts are advanced by this
+     * number of iterations per round, after which the restarts with the largest loss are dropped
+     * (successive halving). The last remaining restart is run to convergence. This makes it
+     * possible to try many random initializations for the cost of a few complete runs. Rounds
+     * which are too short (less than about 5 iterations) may drop the restart which would have
+     * converged to the best solution.
+     *
+     * @param roundIterations number of iterations per round (0 disables the scheduler, default)
+     */
+    public void setRoundIterations(int roundIterations) {
+        if(roundIterations < 0) throw new IllegalArgumentException("Number of iterations must not be negative");
+
+        if(roundIterations != this.roundIterations) {
+            int oldval = this.roundIterations;
+            this.roundIterations = roundIterations;
+            propertyChangeSupport.firePropertyChange("roundIterations", oldval, roundIterations);
+        }
+    }
+
+    /** Fraction of the restarts which is dropped after each round of the restart scheduler */
+    protected double eliminationRate = 0.5;
+
+    /**
+     * Returns the fraction of the restarts which is dropped after each round of the restart
+     * scheduler.
+     *
+     * @return elimination rate
+     */
+    public double getEliminationRate() {
+        return eliminationRate;
+    }
+
+    /**
+     * Sets the fraction of the restarts which is dropped after each round of the restart
+     * scheduler (see setRoundIterations()). At least one restart is dropped per round, and at
+     * least one is kept.
+     *
+     * @param eliminationRate elimination rate between 0 and 1 (default: 0.5)
+     */
+    public void setEliminationRate(double eliminationRate) {
+        if(!(eliminationRate > 0 && eliminationRate < 1)) throw new IllegalArgumentException("Elimination rate must be between 0 and 1");
+
+        if(eliminationRate != this.eliminationRate) {
+            double oldval = this.eliminationRate;
+            this.eliminationRate = eliminationRate;
+            propertyChangeSupport.firePropertyChange("eliminationRate", oldval, eliminationRate);
+        }
+    }
+
+    /** Number of random initializations which are screened before the restarts (0 disables the screening) */
+    protected int numberOfCandidates = 0;
+
+    /**
+     * Returns the number of random initializations which are screened before the restarts.
+     *
+     * @return number of candidates (0 if the screening is disabled)
+     */
+    public int getNumberOfCandidates() {
+        return numberOfCandidates;
+    }
+
+    /**
+     * Sets the number of random initializations which are screened before the restarts of each
+     * optimization phase. If it is positive, this number of random rotations is drawn uniformly
+     * (w.r.t. the Haar measure) in pairs whose projections span orthogonal subspaces, and the
+     * objective function is evaluated once at each of them. The random restarts then start from
+     * the candidates with the smallest objective function value, skipping candidates whose
+     * projection is close to the one of a better candidate. A screening evaluation costs about as
+     * much as one line search trial, so a few hundred candidates are cheap compared to a restart.
+     * Whether a small initial loss leads to a good local minimum depends on the data; with
+     * setRoundIterations(), the screened restarts are compared again after a few iterations.
+     * If there are fewer candidates than restarts, the number of restarts is used.
+     *
+     * @param numberOfCandidates number of candidates (0 draws one random rotation per restart, default)
+     */
+    public void setNumberOfCandidates(int numberOfCandidates) {
+        if(numberOfCandidates < 0) throw new IllegalArgumentException("Number of candidates must not be negative");
+
+        if(numberOfCandidates != this.numberOfCandidates) {
+            int oldval = this.numberOfCandidates;
+            this.numberOfCandidates = numberOfCandidates;
+            propertyChangeSupport.firePropertyChange("numberOfCandidates", oldval, numberOfCandidates);
+        }
+    }
+
+    /** Number of epochs per mini-batch of the stochastic optimizer */
+    protected int batchSize = 32;
+
+    /**
+     * Returns the number of epochs per mini-batch of the stochastic optimizer.
+     *
+     * @return number of epochs per mini-batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of epochs per mini-batch of the stochastic optimizer. In every pass, the
+     * epochs are shuffled and split into mini-batches of this size; every mini-batch gives one
+     * step. If there are not more epochs than this, the stochastic optimizer is the same as the
+     * conjugate gradient.
+     *
+     * @param batchSize number of epochs per mini-batch (default: 32)
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+
+        if(batchSize != this.batchSize) {
+            int oldval = this.batchSize;
+            this.batchSize = batchSize;
+            propertyChangeSupport.firePropertyChange("batchSize", oldval, batchSize);
+        }
+    }
+
+    /** Initial learning rate of the stochastic optimizer */
+    protected double learningRate = 0.02;
+
+    /**
+     * Returns the initial learning rate of the stochastic optimizer.
+     *
+     * @return learning rate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Sets the initial learning rate of the stochastic optimizer, i.e. the (approximate) rotation
+     * angle in radians of a step in every plane spanned by a stationary and a non-stationary
+     * direction.
+     *
+     * @param learningRate positive learning rate (default: 0.02)
+     */
+    public void setLearningRate(double learningRate) {
+        if(!(learningRate > 0)) throw new IllegalArgumentException("Learning rate must be positive");
+
+        if(learningRate != this.learningRate) {
+            double oldval = this.learningRate;
+            this.learningRate = learningRate;
+            propertyChangeSupport.firePropertyChange("learningRate", oldval, learningRate);
+        }
+    }
+
+    /** Decay of the learning rate of the stochastic optimizer per pass */
+    protected double learningRateDecay = 0.5;
+
+    /**
+     * Returns the decay of the learning rate of the stochastic optimizer.
+     *
+     * @return decay of the learning rate per pass
+     */
+    public double getLearningRateDecay() {
+        return learningRateDecay;
+    }
+
+    /**
+     * Sets the step schedule of the stochastic optimizer: in pass p = 0, 1, ..., the learning
+     * rate is learningRate / (1 + learningRateDecay * p), so 0 keeps the learning rate constant.
+     *
+     * @param learningRateDecay non-negative decay per pass (default: 0.5)
+     */
+    public void setLearningRateDecay(double learningRateDecay) {
+        if(!(learningRateDecay >= 0)) throw new IllegalArgumentException("Decay must not be negative");
+
+        if(learningRateDecay != this.learningRateDecay) {
+            double oldval = this.learningRateDecay;
+            this.learningRateDecay = learningRateDecay;
+            propertyChangeSupport.firePropertyChange("learningRateDecay", oldval, learningRateDecay);
+        }
+    }
+
+    /** Number of passes over all epochs of the stochastic optimizer */
+    protected int numberOfPasses = 5;
+
+    /**
+     * Returns the number of passes over all epochs of the stochastic optimizer.
+     *
+     * @return number of passes
+     */
+    public int getNumberOfPasses() {
+        return numberOfPasses;
+    }
+
+    /**
+     * Sets the number of passes over all epochs of the stochastic optimizer before the conjugate
+     * gradient on all epochs takes over (0 skips the mini-batches).
+     *
+     * @param numberOfPasses number of passes (default: 5)
+     */
+    public void setNumberOfPasses(int numberOfPasses) {
+        if(numberOfPasses < 0) throw new IllegalArgumentException("Number of passes must not be negative");
+
+        if(numberOfPasses != this.numberOfPasses) {
+            int oldval = this.numberOfPasses;
+            this.numberOfPasses = numberOfPasses;
+            propertyChangeSupport.firePropertyChange("numberOfPasses", oldval, numberOfPasses);
+        }
+    }
+
+    /** Maximum number of iterations per restart and optimization phase (0: no limit) */
+    protected int maxIterations = 0;
+
+    /**
+     * Returns the maximum number of iterations per restart and optimization phase.
+     *
+     * @return maximum number of iterations (0 if there is no limit)
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the maximum number of iterations per restart and optimization phase. A restart which
+     * reaches it is stopped before convergence and Results.budgetExhausted is set.
+     *
+     * @param maxIterations maximum number of iterations (0: no limit, default)
+     */
+    public void setMaxIterations(int maxIterations) {
+        if(maxIterations < 0) throw new IllegalArgumentException("Number of iterations must not be negative");
+
+        if(maxIterations != this.maxIterations) {
+            int oldval = this.maxIterations;
+            this.maxIterations = maxIterations;
+            propertyChangeSupport.firePropertyChange("maxIterations", oldval, maxIterations);
+        }
+    }
+
+    /** Time limit for the optimization in milliseconds (0: no limit) */
+    protected long timeLimit = 0;
+
+    /**
+     * Returns the time limit for the optimization.
+     *
+     * @return time limit in milliseconds (0 if there is no limit)
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Sets the time limit for the optimization (after the computation of the epoch moments).
+     * When a restart starts, the time which is left is split equally across the restarts of both
+     * phases which have not been started yet (taking into account the restarts which run in
+     * parallel), and the restart stops at the end of its share. Restarts which would start
+     * after the deadline are skipped, except for the first restart of each phase, which does at
+     * least one iteration. So the result always contains both phases; if the limit has stopped a
+     * restart, Results.budgetExhausted is set.
+     *
+     * @param timeLimit time limit in milliseconds (0: no limit, default)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if(timeLimit < 0) throw new IllegalArgumentException("Time limit must not be negative");
+
+        if(timeLimit != this.timeLimit) {
+            long oldval = this.timeLimit;
+            this.timeLimit = timeLimit;
+            propertyChangeSupport.firePropertyChange("timeLimit", oldval, timeLimit);
+        }
+    }
+
+    /** Store the epoch covariance matrices in single precision */
+    protected boolean singlePrecision = false;
+
+    /**
+     * Returns whether the epoch covariance matrices are stored in single precision during the
+     * optimization.
+     *
+     * @return true if the covariance matrices are stored in single precision
+     */
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Sets whether the epoch covariance matrices are stored in single precision during the
+     * optimization, which halves the memory of the copies which each restart holds. The
+     * products with the covariance matrices and all sums are still computed in double
+     * precision. The best result of each phase is refined in double precision at the end (with
+     * the conjugate gradient optimizer if the stochastic one is selected), so that the losses
+     * agree with the ones of the double precision optimization up to the convergence tolerance.
+     *
+     * @param singlePrecision true to store the covariance matrices in single precision
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        if(singlePrecision != this.singlePrecision) {
+            boolean oldval = this.singlePrecision;
+            this.singlePrecision = singlePrecision;
+            propertyChangeSupport.firePropertyChange("singlePrecision", oldval, singlePrecision);
+        }
+    }
+
+    /** Projection onto the stationary subspace of a previous solution, from which the first restart starts */
+    protected SSAMatrix warmStartPs = null;
+
+    /** Projection onto the non-stationary subspace of a previous solution */
+    protected SSAMatrix warmStartPn = null;
+
+    /**
+     * Returns the projection onto the stationary subspace from which the first restart starts.
+     *
+     * @return d x D projection matrix (null if the restarts are initialized randomly)
+     */
+    public SSAMatrix getWarmStartPs() {
+        return warmStartPs;
+    }
+
+    /**
+     * Returns the projection onto the non-stationary subspace from which the first restart of the
+     * optimization of the n-sources starts.
+     *
+     * @return (D - d) x D projection matrix (null if the solution for the s-sources is used)
+     */
+    public SSAMatrix getWarmStartPn() {
+        return warmStartPn;
+    }
+
+    /**
+     * Sets the projections of a previous solution (e.g. on earlier data from the same sensors), from
+     * which the first restart of both optimizations starts. The projections are re-whitened for the
+     * new data, i.e. only the subspaces which they span are used. The other restarts are initialized
+     * randomly, so with one restart, no random initializations are used at all.
+     *
+     * @param Ps d x D projection onto the stationary subspace (null disables the warm start)
+     * @param Pn projection onto the non-stationary subspace with at most D - d rows and D columns (if
+     *        null, the first restart of the optimization of the n-sources starts from the solution for
+     *        the s-sources)
+     */
+    public void setWarmStart(SSAMatrix Ps, SSAMatrix Pn) {
+        SSAMatrix oldval = this.warmStartPs;
+        this.warmStartPs = Ps;
+        this.warmStartPn = (Ps == null) ? null : Pn;
+        propertyChangeSupport.firePropertyChange("warmStart", oldval, Ps);
+    }
+
     /** Set this to false, if changes in the mean should be ignored */
     protected boolean useMean = true;
 
@@ -0,0 +1,1606 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Preallocated buffers for one run of the SSA optimization. The workspace holds the original
+ * covariance matrices and means of all epochs, the current demixing matrix and scratch matrices
+ * for the evaluation of the objective function and its gradient.
+ *
+ * The objective function only depends on the first d rows of the rotated demixing matrix, so the
+ * covariance matrices are never rotated as a whole: for every evaluation, only the d x n projection
+ * P = (R*B)[0:d,:] is computed and each epoch costs O(d*n^2) operations instead of O(n^3).
+ *
+ * To save memory for many dimensions and epochs, the covariance matrices can be stored in single
+ * precision. They are transformed by the initial demixing matrix (which includes the whitening)
+ * before they are rounded, so that the rounding error is relative to the whitened covariance
+ * matrices and not to the largest variance of the original data; B is then relative to the
+ * initial demixing matrix. The products with the covariance matrices and all sums are still
+ * computed in double precision, so the objective function is only changed by the rounding of the
+ * covariance matrices (a relative error of about 6e-8 per entry).
+ *
+ * After the constructor, evaluating the objective function, accepting a trial rotation and the
+ * vector operations of the optimizer do not allocate any memory (if the epochs are evaluated in the
+ * calling thread), so the optimization loop does not produce garbage.
+ *
+ * All matrices are stored row by row in one-dimensional arrays.
+ */
+public class SSAWorkspace
+{
+    /** Number of dimensions */
+    private final int n;
+
+    /** Number of stationary sources (number of rows of the optimized projection) */
+    private final int d;
+
+    /** Number of epochs */
+    private final int epochs;
+
+    private final boolean useMean;
+
+    /** Weights of the epochs (number of samples) */
+    private final double weights[];
+
+    // original (not rotated) covariance matrices (either in double precision in S or in single
+    // precision in Sf) and centered means
+    private final double S[][];
+    private final float Sf[][];
+    private final double mu[][];
+
+    // epochs of the current mini-batch (see selectEpochs()): the first batchSize entries of
+    // batchEpochs are evaluated and their weights are scaled by batchScale
+    private final int batchEpochs[];
+    private int batchSize;
+    private double batchScale = 1.0;
+
+    /** Current demixing matrix (including the whitening, unless base is set) */
+    private double B[];
+
+    /** Initial demixing matrix by which the moments have been transformed in single precision (otherwise null) */
+    private final double base[];
+
+    /** Rotation matrix of the last evaluation */
+    private final double R[];
+
+    /** R*B (only computed if needed, i.e. for the gradient at a trial rotation and in accept()) */
+    private double RB[];
+
+    /** First d rows of R*B, i.e. the projection onto the estimated sources */
+    private final double P[];
+
+    /** True, if the last evaluation was done at a trial rotation (and not at the current point) */
+    private boolean rotated = false;
+
+    /** True, if the rotation of the last evaluation is exp(t*D) along the search direction and R has not been computed yet */
+    private boolean geodesic = false;
+
+    // decomposition of the search direction D: D*D = Q*diag(-theta^2)*Q', and D*Q, Q'*B
+    // (allocated by the first call of setSearchDirection())
+    private double geoQ[];
+    private double geoDQ[];
+    private double geoQtB[];
+    private double geoTheta[];
+    private double geoCos[];
+    private double geoSin[];
+    private double geoW[];
+
+    /** Gradient w.r.t. M of the last evaluation with calcGradient set to true */
+    private final double gradient[];
+
+    /** d x n scratch matrix for the gradient; after evaluate(null, true) the gradient w.r.t. P in the rotated coordinates */
+    private final double X[];
+
+    /** True, if the last evaluation computed the gradient at the current point (needed for hessianTimes()) */
+    private boolean gradientAtCurrentPoint = false;
+
+    // true, if the buffers PS, C, logdet and Pmu contain P*S_i, the Cholesky factors of P*S_i*P',
+    // their log-determinants and P*mu_i of the last evaluation without the gradient, at the trial
+    // rotation or at the current point respectively, so that the next evaluation at the current
+    // point does not need to factorize again (see evaluate())
+    private boolean factorsAtTrial = false;
+    private boolean factorsAtCurrentPoint = false;
+
+    /** Reuse the factors in the buffers in the current evaluation */
+    private boolean reuseFactors = false;
+
+    // buffers for the Hessian (allocated by the first call of hessianTimes()): first d rows of V*B,
+    // the n x n product and sum_i w_i*mu_i*mu_i'
+    private double hessVB[];
+    private double hessD[];
+    private double muCov[];
+    private List<Callable<Object>> hessTasks;
+
+    // per epoch: P*S_i (overwritten by inv(P*S_i*P')*P*S_i for the gradient), P*S_i*P' (overwritten
+    // by its Cholesky factor), log(det(P*S_i*P')) and P*mu_i, indexed by the position of the epoch in
+    // the current mini-batch; each epoch block writes only its own positions
+    private double PS[][];
+    private double C[][];
+    private double logdet[];
+    private double Pmu[][];
+
+    // buffers of the speculative line search (allocated by setSpeculativeSteps()): for every step
+    // size of a batch, the angles along the geodesic, the projection, the buffers of all epochs as
+    // above and the loss; the buffers of the selected step are swapped with the ones above
+    private int speculativeSteps = 1;
+    private ExecutorService speculativePool;
+    private List<Callable<Object>> speculativeTasks;
+    private double specT[];
+    private double specCos[][];
+    private double specSin[][];
+    private double specW[][];
+    private double specP[][];
+    private double specPS[][][];
+    private double specC[][][];
+    private double specLogdet[][];
+    private double specPmu[][][];
+    private double specLoss[];
+    private int specCount;
+
+    // scratch matrices for the matrix exponential
+    private final double expmAs[];
+    private final double expmA2[];
+    private final double expmA4[];
+    private final double expmA6[];
+    private final double expmU[];
+    private final double expmV[];
+    private final double expmTmp[];
+    private final int expmPivot[];
+
+    /** Map from antisymmetric matrices to rotations (see SSAParameters) */
+    private int retraction = SSAParameters.RETRACTION_EXPM;
+
+    // settings of the current evaluation, read by the epoch blocks
+    private boolean calcGradient;
+
+    /** Blocks of epochs, each with its own scratch matrices and partial sums */
+    private final EpochBlock blocks[];
+
+    private final ExecutorService pool;
+    private final List<Callable<Object>> blockTasks;
+
+    /**
+     * Creates a new workspace.
+     *
+     * @param data class containing the data (the epoch covariances and means have to be computed already)
+     * @param init initial demixing matrix (n x n, including the whitening)
+     * @param d number of rows of the optimized projection
+     * @param useMean if false, the objective function without the mean is used
+     * @param pool thread pool for the epoch blocks (if null, the blocks are evaluated in the calling thread)
+     * @param numberOfBlocks number of blocks into which the epochs are split
+     */
+    public SSAWorkspace(Data data, SSAMatrix init, int d, boolean useMean, ExecutorService pool, int numberOfBlocks)
+    {
+        this(data, init, d, useMean, pool, numberOfBlocks, false);
+    }
+
+    /**
+     * Creates a new workspace, optionally with the covariance matrices in single precision.
+     *
+     * @param data class containing the data (the epoch covariances and means have to be computed already)
+     * @param init initial demixing matrix (n x n, including the whitening)
+     * @param d number of rows of the optimized projection
+     * @param useMean if false, the objective function without the mean is used
+     * @param pool thread pool for the epoch blocks (if null, the blocks are evaluated in the calling thread)
+     * @param numberOfBlocks number of blocks into which the epochs are split
+     * @param singlePrecision set this to true to store the covariance matrices in single precision
+     */
+    public SSAWorkspace(Data data, SSAMatrix init, int d, boolean useMean, ExecutorService pool, int numberOfBlocks,
+                        boolean singlePrecision)
+    {
+        this(data.S, useMean ? centeredMeans(data) : null, data.epochSizes, init, d, useMean, pool, numberOfBlocks,
+             singlePrecision);
+    }
+
+    /**
+     * Creates a new workspace for the given covariance matrices and means.
+     *
+     * @param S array with covariance matrices over all epochs
+     * @param mu array with (centered) means over all epochs (only used if useMean is true)
+     * @param epochSizes number of data points in the epochs
+     * @param init initial demixing matrix (n x n)
+     * @param d number of rows of the optimized projection
+     * @param useMean if false, the objective function without the mean is used
+     * @param pool thread pool for the epoch blocks (if null, the blocks are evaluated in the calling thread)
+     * @param numberOfBlocks number of blocks into which the epochs are split
+     */
+    public SSAWorkspace(SSAMatrix S[], SSAMatrix mu[], int epochSizes[], SSAMatrix init, int d, boolean useMean,
+                        ExecutorService pool, int numberOfBlocks)
+    {
+        this(S, mu, epochSizes, init, d, useMean, pool, numberOfBlocks, false);
+    }
+
+    /**
+     * Creates a new workspace for the given covariance matrices and means, optionally with the
+     * covariance matrices in single precision.
+     *
+     * @param S array with covariance matrices over all epochs
+     * @param mu array with (centered) means over all epochs (only used if useMean is true)
+     * @param epochSizes number of data points in the epochs
+     * @param init initial demixing matrix (n x n)
+     * @param d number of rows of the optimized projection
+     * @param useMean if false, the objective function without the mean is used
+     * @param pool thread pool for the epoch blocks (if null, the blocks are evaluated in the calling thread)
+     * @param numberOfBlocks number of blocks into which the epochs are split
+     * @param singlePrecision set this to true to store the covariance matrices in single precision
+     */
+    public SSAWorkspace(SSAMatrix S[], SSAMatrix mu[], int epochSizes[], SSAMatrix init, int d, boolean useMean,
+                        ExecutorService pool, int numberOfBlocks, boolean singlePrecision)
+    {
+        this.n = init.getRows();
+        this.d = d;
+        this.epochs = S.length;
+        this.useMean = useMean;
+        this.pool = pool;
+
+        weights = new double[epochs];
+        batchEpochs = new int[epochs];
+        for(int i = 0; i < epochs; i++)
+        {
+            weights[i] = (double)epochSizes[i];
+            batchEpochs[i] = i;
+        }
+        batchSize = epochs;
+
+        R = new double[n*n];
+        RB = new double[n*n];
+        P = new double[d*n];
+        gradient = new double[n*n];
+        X = new double[d*n];
+        expmAs = new double[n*n];
+        expmA2 = new double[n*n];
+        expmA4 = new double[n*n];
+        expmA6 = new double[n*n];
+        expmU = new double[n*n];
+        expmV = new double[n*n];
+        expmTmp = new double[n*n];
+        expmPivot = new int[n];
+        PS = new double[epochs][d*n];
+        C = new double[epochs][d*d];
+        logdet = new double[epochs];
+        Pmu = useMean ? new double[epochs][d] : null;
+
+        if(singlePrecision)
+        {
+            // store init*S_i*init' and init*mu_i and start with B = I
+            base = toArray(init);
+            B = new double[n*n];
+            for(int a = 0; a < n; a++)
+            {
+                B[a*n + a] = 1.0;
+            }
+            double buf[] = new double[n*n];
+            double BS[] = new double[n*n];
+            this.S = null;
+            this.Sf = new float[epochs][n*n];
+            for(int i = 0; i < epochs; i++)
+            {
+                MathFunctions.mmul(base, toArray(S[i]), BS, n, n, n);
+                MathFunctions.mmulTransposed(BS, base, buf, n, n, n);
+                for(int j = 0; j < n*n; j++)
+                {
+                    this.Sf[i][j] = (float)buf[j];
+                }
+            }
+        }
+        else
+        {
+            base = null;
+            B = toArray(init);
+            this.S = new double[epochs][];
+            this.Sf = null;
+            for(int i = 0; i < epochs; i++)
+            {
+                this.S[i] = toArray(S[i]);
+            }
+        }
+        if(useMean)
+        {
+            this.mu = new double[epochs][];
+            for(int i = 0; i < epochs; i++)
+            {
+                this.mu[i] = toArray(mu[i]);
+                if(base != null)
+                {
+                    double Bmu[] = new double[n];
+                    MathFunctions.mmul(base, this.mu[i], Bmu, n, n, 1);
+                    this.mu[i] = Bmu;
+                }
+            }
+        }
+        else
+        {
+            this.mu = null;
+        }
+
+        // split the epochs into blocks of (nearly) equal size
+        int nb = Math.max(1, Math.min(numberOfBlocks, epochs));
+        blocks = new EpochBlock[nb];
+        blockTasks = new ArrayList<Callable<Object>>(nb);
+        for(int b = 0; b < nb; b++)
+        {
+            final EpochBlock block = new EpochBlock();
+            blocks[b] = block;
+            blockTasks.add(new Callable<Object>() {
+                public Object call() {
+                    sumEpochs(block);
+                    return null;
+                }
+            });
+        }
+        splitBatch();
+    }
+
+    /**
+     * Returns the means of all epochs minus the mean over all epochs.
+     */
+    private static SSAMatrix[] centeredMeans(Data data)
+    {
+        SSAMatrix mu[] = new SSAMatrix[data.mu.length];
+        for(int i = 0; i < mu.length; i++)
+        {
+            mu[i] = data.mu[i].sub(data.muall);
+        }
+        return mu;
+    }
+
+    /**
+     * Scratch matrices and partial sums for a block of consecutive positions in the current
+     * mini-batch.
+     */
+    private class EpochBlock
+    {
+        int from;
+        int to;
+        double loss;
+        /** Partial sum of the gradient w.r.t. P (d x n) */
+        final double gradient[] = new double[d*n];
+        /** Partial sum of the Hessian times a direction (d x n) and scratch matrices */
+        double hess[];
+        double W[];
+        double C1[];
+    }
+
+    /**
+     * Splits the positions of the current mini-batch into the blocks (nearly) equally. Blocks
+     * may be empty if the mini-batch is smaller than the number of blocks.
+     */
+    private void splitBatch()
+    {
+        int nb = blocks.length;
+        for(int b = 0; b < nb; b++)
+        {
+            blocks[b].from = (int)(((long)batchSize * b) / nb);
+            blocks[b].to = (int)(((long)batchSize * (b + 1)) / nb);
+        }
+    }
+
+    /**
+     * Restricts the objective function, its gradient and the Hessian to a mini-batch of epochs.
+     * The weights of the selected epochs are scaled such that they sum up to the total weight of
+     * all epochs, i.e. the loss of the mini-batch is an estimate of the loss over all epochs on
+     * the same scale. The selection applies to all following evaluations; selectEpochs(null, 0)
+     * selects all epochs again in their original order, so that the evaluations are exactly the
+     * same as before.
+     *
+     * @param indices indices of the selected epochs (the array is copied; if null, all epochs are selected)
+     * @param count number of selected epochs, i.e. the length of the used part of indices
+     */
+    public void selectEpochs(int indices[], int count)
+    {
+        if(indices == null)
+        {
+            for(int i = 0; i < epochs; i++)
+            {
+                batchEpochs[i] = i;
+            }
+            batchSize = epochs;
+            batchScale = 1.0;
+        }
+        else
+        {
+            if(count < 1 || count > epochs)
+            {
+                throw new IllegalArgumentException("Number of selected epochs must be between 1 and " + epochs);
+            }
+            double total = 0.0;
+            double selected = 0.0;
+            for(int i = 0; i < epochs; i++)
+            {
+                total += weights[i];
+            }
+            for(int k = 0; k < count; k++)
+            {
+                batchEpochs[k] = indices[k];
+                selected += weights[indices[k]];
+            }
+            batchSize = count;
+            batchScale = total / selected;
+        }
+        splitBatch();
+        gradientAtCurrentPoint = false;
+        factorsAtTrial = false;
+        factorsAtCurrentPoint = false;
+        muCov = null;
+    }
+
+    /**
+     * Returns the number of epochs.
+     *
+     * @return number of epochs
+     */
+    public int getNumberOfEpochs()
+    {
+        return epochs;
+    }
+
+    /**
+     * Returns the weight of an epoch in the objective function, i.e. its number of samples.
+     *
+     * @param i epoch
+     * @return weight of the epoch
+     */
+    public double getEpochWeight(int i)
+    {
+        return weights[i];
+    }
+
+    /**
+     * Returns the number of dimensions.
+     *
+     * @return number of dimensions
+     */
+    public int getNumberOfDimensions()
+    {
+        return n;
+    }
+
+    /**
+     * Returns the number of rows of the optimized projection.
+     *
+     * @return number of rows of the optimized projection
+     */
+    public int getNumberOfRows()
+    {
+        return d;
+    }
+
+    /**
+     * Returns the gradient w.r.t. M which has been computed by the last call of evaluate()
+     * with calcGradient set to true. The returned array is reused by the next evaluation.
+     *
+     * @return n x n gradient
+     */
+    public double[] getGradient()
+    {
+        return gradient;
+    }
+
+    /**
+     * Returns the rotation matrix of the last evaluation.
+     *
+     * @return rotation matrix (identity, if the last evaluation was at the current point)
+     */
+    public SSAMatrix getRotation()
+    {
+        computeGeodesicRotation();
+        return toMatrix(R, n, n);
+    }
+
+    /**
+     * Returns the covariance matrix of an epoch, rotated by the demixing matrix and the rotation
+     * of the last evaluation. The matrix is computed on demand.
+     *
+     * @param i epoch
+     * @return rotated covariance matrix
+     */
+    public SSAMatrix getRotatedCovariance(int i)
+    {
+        double T[] = rotatedDemixingMatrix();
+        double TS[] = new double[n*n];
+        double TSTt[] = new double[n*n];
+        mmulCovariance(T, i, TS, n);
+        MathFunctions.mmulTransposed(TS, T, TSTt, n, n, n);
+        return toMatrix(TSTt, n, n);
+    }
+
+    /**
+     * Returns the mean of an epoch, rotated by the demixing matrix and the rotation of the last
+     * evaluation. The vector is computed on demand.
+     *
+     * @param i epoch
+     * @return rotated mean (or null, if the means are not used)
+     */
+    public SSAMatrix getRotatedMean(int i)
+    {
+        if(!useMean)
+        {
+            return null;
+        }
+        double Tmu[] = new double[n];
+        MathFunctions.mmul(rotatedDemixingMatrix(), mu[i], Tmu, n, n, 1);
+        return toMatrix(Tmu, n, 1);
+    }
+
+    /**
+     * Returns R*B for the rotation of the last evaluation (a new array).
+     */
+    private double[] rotatedDemixingMatrix()
+    {
+        double T[] = new double[n*n];
+        rotatedDemixingMatrix(T);
+        return T;
+    }
+
+    /**
+     * Computes R*B for the rotation of the last evaluation.
+     */
+    private void rotatedDemixingMatrix(double T[])
+    {
+        if(geodesic)
+        {
+            // R*B = (Q*diag(cos) + D*Q*diag(sin/theta))*Q'*B
+            geodesicFactor(n, geoW);
+            MathFunctions.mmul(geoW, geoQtB, T, n, n, n);
+        }
+        else
+        {
+            MathFunctions.mmul(R, B, T, n, n, n);
+        }
+    }
+
+    /**
+     * Returns the current demixing matrix.
+     *
+     * @return demixing matrix
+     */
+    public SSAMatrix getDemixingMatrix()
+    {
+        if(base != null)
+        {
+            double T[] = new double[n*n];
+            MathFunctions.mmul(B, base, T, n, n, n);
+            return toMatrix(T, n, n);
+        }
+        return toMatrix(B, n, n);
+    }
+
+    /**
+     * Sets the map from antisymmetric matrices to rotations, which is used by evaluate() and
+     * evaluateAlong().
+     *
+     * @param retraction SSAParameters.RETRACTION_EXPM (default) or SSAParameters.RETRACTION_CAYLEY
+     */
+    public void setRetraction(int retraction)
+    {
+        if(retraction != SSAParameters.RETRACTION_EXPM && retraction != SSAParameters.RETRACTION_CAYLEY)
+        {
+            throw new IllegalArgumentException("Unknown retraction");
+        }
+        this.retraction = retraction;
+    }
+
+    /**
+     * Computes the objective function (and optionally the gradient) at the rotation exp(M) (or
+     * its Cayley transform, see setRetraction()) of the current point. The rotation is kept, so
+     * that it can be accepted as the new current point by accept().
+     *
+     * If the last evaluation did not compute the gradient and its rotation has been accepted (or
+     * it was already at the current point), an evaluation at the current point reuses its Cholesky
+     * factors and loss, so that the gradient after a successful line search only costs the solves
+     * with the factors.
+     *
+     * @param M antisymmetric n x n matrix (if M == null, the objective function is evaluated at the current point)
+     * @param calcGradient set this to true if the gradient should also be calculated (see getGradient())
+     * @return objective function value at exp(M)
+     */
+    public double evaluate(double M[], boolean calcGradient)
+    {
+        rotated = (M != null);
+        geodesic = false;
+        reuseFactors = !rotated && factorsAtCurrentPoint;
+        if(rotated)
+        {
+            if(retraction == SSAParameters.RETRACTION_CAYLEY)
+            {
+                cayley(M, R);
+            }
+            else
+            {
+                expm(M, R);
+            }
+            // only the first d rows of R*B are needed for the objective function
+            MathFunctions.mmul(R, B, P, d, n, n);
+        }
+        else
+        {
+            setIdentity(R);
+            System.arraycopy(B, 0, P, 0, d*n);
+        }
+
+        return sumAllEpochs(calcGradient);
+    }
+
+    /**
+     * Computes the objective function at G*B for an orthogonal n x n matrix G, e.g. a candidate
+     * initialization relative to the current point. As for evaluate(), the rotation is kept, so
+     * that it can be accepted as the new current point by accept().
+     *
+     * @param G orthogonal n x n matrix (row by row)
+     * @return objective function value at G*B
+     */
+    public double evaluateRotation(double G[])
+    {
+        System.arraycopy(G, 0, R, 0, n*n);
+        rotated = true;
+        geodesic = false;
+        reuseFactors = false;
+        MathFunctions.mmul(R, B, P, d, n, n);
+
+        return sumAllEpochs(false);
+    }
+
+    /**
+     * Sets the search direction for evaluateAlong(). The antisymmetric matrix D is decomposed
+     * once, using the eigendecomposition of the symmetric matrix D*D = Q*diag(-theta^2)*Q'. Since
+     * exp(t*D) = cos(t*sqrt(-D*D)) + D*sin(t*sqrt(-D*D))/sqrt(-D*D), every rotation along the
+     * geodesic is then given by
+     *
+     *   exp(t*D) = (Q*diag(cos(t*theta)) + D*Q*diag(sin(t*theta)/theta))*Q'
+     *
+     * and the first d rows of exp(t*D)*B can be computed with O(d*n^2) operations, without a
+     * matrix exponential. The Cayley transform of t*D rotates in the same planes by the angles
+     * 2*atan(t*theta/2) instead of t*theta, so it is computed in the same way. Unlike the
+     * evaluations, the decomposition allocates memory. The search direction refers to the current
+     * point and has to be set again after accept().
+     *
+     * @param D antisymmetric n x n matrix
+     */
+    public void setSearchDirection(double D[])
+    {
+        if(geoQ == null)
+        {
+            geoQ = new double[n*n];
+            geoDQ = new double[n*n];
+            geoQtB = new double[n*n];
+            geoTheta = new double[n];
+            geoCos = new double[n];
+            geoSin = new double[n];
+            geoW = new double[n*n];
+        }
+
+        MathFunctions.mmul(D, D, expmTmp, n, n, n);
+        // symmetrize to remove rounding errors
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < a; b++)
+            {
+                double v = 0.5*(expmTmp[a*n + b] + expmTmp[b*n + a]);
+                expmTmp[a*n + b] = v;
+                expmTmp[b*n + a] = v;
+            }
+        }
+        SSAMatrix V[] = toMatrix(expmTmp, n, n).symmetricEigenvectors();
+        for(int a = 0; a < n; a++)
+        {
+            geoTheta[a] = Math.sqrt(Math.max(-V[1].get(a, a), 0.0));
+            for(int b = 0; b < n; b++)
+            {
+                geoQ[a*n + b] = V[0].get(a, b);
+            }
+        }
+        MathFunctions.mmul(D, geoQ, geoDQ, n, n, n);
+        // Q'*B
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < n; b++)
+            {
+                expmTmp[a*n + b] = geoQ[b*n + a];
+            }
+        }
+        MathFunctions.mmul(expmTmp, B, geoQtB, n, n, n);
+    }
+
+    /**
+     * Computes the objective function (and optionally the gradient) at the rotation exp(t*D) (or
+     * its Cayley transform, see setRetraction()) of the current point, where D is the search
+     * direction set by setSearchDirection(). Like
+     * evaluate(), this does not allocate memory, and the rotation can be accepted by accept().
+     *
+     * @param t step size
+     * @param calcGradient set this to true if the gradient should also be calculated (see getGradient())
+     * @return objective function value at exp(t*D)
+     */
+    public double evaluateAlong(double t, boolean calcGradient)
+    {
+        geodesicAngles(t, geoCos, geoSin);
+        rotated = true;
+        geodesic = true;
+        reuseFactors = false;
+
+        // first d rows of exp(t*D)*B
+        geodesicFactor(d, geoW);
+        MathFunctions.mmul(geoW, geoQtB, P, d, n, n);
+
+        return sumAllEpochs(calcGradient);
+    }
+
+    /**
+     * Sets the number of step sizes which evaluateAlong(double[], int, double[]) evaluates
+     * concurrently, and allocates their buffers (d x n matrices for every epoch and step).
+     *
+     * @param steps number of step sizes (1: no speculative evaluation)
+     * @param pool thread pool for the steps (may be null; the steps are then evaluated one after another)
+     */
+    public void setSpeculativeSteps(int steps, ExecutorService pool)
+    {
+        if(steps < 1)
+        {
+            throw new IllegalArgumentException("Number of steps must be positive");
+        }
+        speculativeSteps = steps;
+        speculativePool = pool;
+        if(steps == 1)
+        {
+            return;
+        }
+
+        specT = new double[steps];
+        specCos = new double[steps][n];
+        specSin = new double[steps][n];
+        specW = new double[steps][d*n];
+        specP = new double[steps][d*n];
+        specPS = new double[steps][epochs][d*n];
+        specC = new double[steps][epochs][d*d];
+        specLogdet = new double[steps][epochs];
+        specPmu = useMean ? new double[steps][epochs][d] : null;
+        specLoss = new double[steps];
+        speculativeTasks = new ArrayList<Callable<Object>>(steps);
+        for(int j = 0; j < steps; j++)
+        {
+            final int step = j;
+            speculativeTasks.add(new Callable<Object>() {
+                public Object call() {
+                    if(step < specCount)
+                    {
+                        evaluateStep(step);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of step sizes which are evaluated concurrently.
+     *
+     * @return number of step sizes (1: no speculative evaluation)
+     */
+    public int getSpeculativeSteps()
+    {
+        return speculativeSteps;
+    }
+
+    /**
+     * Computes the objective function at the rotations exp(t[j]*D) (or their Cayley transforms)
+     * of the current point for several step sizes concurrently, where D is the search direction set
+     * by setSearchDirection(). None of the rotations is kept until one of them is selected by
+     * selectStep(); then it can be accepted by accept().
+     *
+     * @param t step sizes
+     * @param count number of step sizes (at most getSpeculativeSteps())
+     * @param losses array for the objective function values
+     */
+    public void evaluateAlong(double t[], int count, double losses[])
+    {
+        if(count > speculativeSteps)
+        {
+            throw new IllegalArgumentException("At most " + speculativeSteps + " step sizes can be evaluated at once");
+        }
+        System.arraycopy(t, 0, specT, 0, count);
+        specCount = count;
+        List<Future<Object>> futures = Parallel.submitAll(speculativePool, speculativeTasks);
+        for(int j = 0; j < futures.size(); j++)
+        {
+            Parallel.get(futures.get(j));
+        }
+        System.arraycopy(specLoss, 0, losses, 0, count);
+    }
+
+    /**
+     * Makes step j of the last call of evaluateAlong(double[], int, double[]) the last evaluation,
+     * as if it had been evaluated by evaluateAlong(t[j], false).
+     *
+     * @param j index of the step size
+     */
+    public void selectStep(int j)
+    {
+        System.arraycopy(specCos[j], 0, geoCos, 0, n);
+        System.arraycopy(specSin[j], 0, geoSin, 0, n);
+        System.arraycopy(specP[j], 0, P, 0, d*n);
+        double buf[][] = PS;
+        PS = specPS[j];
+        specPS[j] = buf;
+        buf = C;
+        C = specC[j];
+        specC[j] = buf;
+        double ld[] = logdet;
+        logdet = specLogdet[j];
+        specLogdet[j] = ld;
+        if(useMean)
+        {
+            buf = Pmu;
+            Pmu = specPmu[j];
+            specPmu[j] = buf;
+        }
+
+        rotated = true;
+        geodesic = true;
+        calcGradient = false;
+        gradientAtCurrentPoint = false;
+        factorsAtTrial = true;
+        factorsAtCurrentPoint = false;
+    }
+
+    /**
+     * Evaluates the objective function for step size j of a speculative line search on all
+     * epochs, using only the buffers of this step.
+     */
+    private void evaluateStep(int j)
+    {
+        geodesicAngles(specT[j], specCos[j], specSin[j]);
+        geodesicFactor(d, specCos[j], specSin[j], specW[j]);
+        MathFunctions.mmul(specW[j], geoQtB, specP[j], d, n, n);
+        factorize(specP[j], specPS[j], specC[j], specLogdet[j], specPmu == null ? null : specPmu[j], 0, batchSize, false);
+        specLoss[j] = sumLoss(specLogdet[j], specPmu == null ? null : specPmu[j], 0, batchSize);
+    }
+
+    /**
+     * Computes cos(t*theta) and sin(t*theta)/theta (or the angles of the Cayley transform) along
+     * the search direction.
+     */
+    private void geodesicAngles(double t, double cos[], double sin[])
+    {
+        for(int j = 0; j < n; j++)
+        {
+            double theta = geoTheta[j];
+            double angle = (retraction == SSAParameters.RETRACTION_CAYLEY) ? 2.0*Math.atan(0.5*t*theta) : t*theta;
+            cos[j] = Math.cos(angle);
+            sin[j] = (theta == 0.0) ? t : Math.sin(angle)/theta;
+        }
+    }
+
+    /**
+     * Computes the first rows of Q*diag(cos(t*theta)) + D*Q*diag(sin(t*theta)/theta).
+     */
+    private void geodesicFactor(int rows, double W[])
+    {
+        geodesicFactor(rows, geoCos, geoSin, W);
+    }
+
+    /**
+     * Computes the first rows of Q*diag(cos) + D*Q*diag(sin).
+     */
+    private void geodesicFactor(int rows, double cos[], double sin[], double W[])
+    {
+        for(int a = 0; a < rows; a++)
+        {
+            for(int j = 0; j < n; j++)
+            {
+                W[a*n + j] = geoQ[a*n + j]*cos[j] + geoDQ[a*n + j]*sin[j];
+            }
+        }
+    }
+
+    /**
+     * Computes R = exp(t*D) for the last evaluation along the search direction, if needed.
+     */
+    private void computeGeodesicRotation()
+    {
+        if(geodesic)
+        {
+            geodesicFactor(n, geoW);
+            MathFunctions.mmulTransposed(geoW, geoQ, R, n, n, n);
+            geodesic = false;
+        }
+    }
+
+    /**
+     * Sums up the loss (and optionally the gradient) over all epochs for the projection P.
+     */
+    private double sumAllEpochs(boolean calcGradient)
+    {
+        this.calcGradient = calcGradient;
+        gradientAtCurrentPoint = calcGradient && !rotated;
+        // the gradient overwrites P*S_i by inv(P*S_i*P')*P*S_i
+        factorsAtTrial = !calcGradient && rotated;
+        factorsAtCurrentPoint = !calcGradient && !rotated;
+
+        if(blocks.length == 1)
+        {
+            sumEpochs(blocks[0]);
+        }
+        else
+        {
+            List<Future<Object>> futures = Parallel.submitAll(pool, blockTasks);
+            for(int b = 0; b < futures.size(); b++)
+            {
+                Parallel.get(futures.get(b));
+            }
+
+            // pairwise tree reduction: ((0 + 1) + (2 + 3)) + ...
+            for(int step = 1; step < blocks.length; step *= 2)
+            {
+                for(int b = 0; b + step < blocks.length; b += 2*step)
+                {
+                    blocks[b].loss += blocks[b + step].loss;
+                    if(calcGradient)
+                    {
+                        add(blocks[b].gradient, blocks[b + step].gradient);
+                    }
+                }
+            }
+        }
+
+        if(calcGradient)
+        {
+            // The gradient w.r.t. the rotated demixing matrix is H = sum_i w_i*(-inv(P*S_i*P')*P*S_i + P*mu_i*mu_i')
+            // in the original coordinates, hence G = H*(R*B)' in the rotated coordinates (of which only
+            // the first d rows are non-zero). The gradient w.r.t. M is 2*(G - G').
+            double H[] = blocks[0].gradient;
+            double T[] = B;
+            if(rotated)
+            {
+                rotatedDemixingMatrix(RB);
+                T = RB;
+            }
+            MathFunctions.mmulTransposed(H, T, X, d, n, n);
+            for(int a = 0; a < n; a++)
+            {
+                for(int b = 0; b < n; b++)
+                {
+                    double v = 0.0;
+                    if(a < d) v += X[a*n + b];
+                    if(b < d) v -= X[b*n + a];
+                    gradient[a*n + b] = 2.0*v;
+                }
+            }
+        }
+
+        return blocks[0].loss;
+    }
+
+    /**
+     * Computes the Hessian of the objective function at the current point w.r.t. M, applied to an
+     * antisymmetric direction V. Since exp(M)*B is a geodesic, this is the Riemannian Hessian on
+     * the rotations w.r.t. the metric <X, Y> = trace(X'*Y)/2, in the same representation as the
+     * gradient. The last evaluation has to be evaluate(null, true), whose Cholesky factors are reused.
+     *
+     * With Z_i = B*S_i*B', K_i = inv(P*S_i*P'), nu_i = B*mu_i and the gradient G w.r.t. P (in the
+     * rotated coordinates), the Hessian is D - D', where
+     *
+     *   D = -V*[G; 0] - [G; 0]*V + [sum_i w_i*(2*K_i*C1_i*K_i*(Z_i)_d - 2*K_i*(V*Z_i)_d) + 2*(V*N)_d; 0],
+     *
+     * C1_i = (V*Z_i)_dd + (V*Z_i)_dd' and N = sum_i w_i*nu_i*nu_i'. The sum is computed in the
+     * original coordinates with O(d*n^2) operations per epoch and no memory is allocated (if the
+     * epochs are evaluated in the calling thread).
+     *
+     * @param V antisymmetric n x n matrix
+     * @param result array for the antisymmetric n x n result
+     */
+    public void hessianTimes(double V[], double result[])
+    {
+        if(!gradientAtCurrentPoint)
+        {
+            throw new IllegalStateException("The gradient at the current point has to be evaluated first");
+        }
+        if(hessVB == null)
+        {
+            hessVB = new double[d*n];
+            hessD = new double[n*n];
+            for(int b = 0; b < blocks.length; b++)
+            {
+                blocks[b].hess = new double[d*n];
+                blocks[b].W = new double[d*n];
+                blocks[b].C1 = new double[d*d];
+            }
+            hessTasks = new ArrayList<Callable<Object>>(blocks.length);
+            for(int b = 0; b < blocks.length; b++)
+            {
+                final EpochBlock block = blocks[b];
+                hessTasks.add(new Callable<Object>() {
+                    public Object call() {
+                        hessianEpochs(block);
+                        return null;
+                    }
+                });
+            }
+        }
+        if(useMean && muCov == null)
+        {
+            muCov = new double[n*n];
+            for(int k = 0; k < batchSize; k++)
+            {
+                int i = batchEpochs[k];
+                for(int a = 0; a < n; a++)
+                {
+                    double c = batchScale*weights[i]*mu[i][a];
+                    for(int b = 0; b < n; b++)
+                    {
+                        muCov[a*n + b] += c*mu[i][b];
+                    }
+                }
+            }
+        }
+
+        // first d rows of V*B
+        MathFunctions.mmul(V, B, hessVB, d, n, n);
+
+        if(blocks.length == 1)
+        {
+            hessianEpochs(blocks[0]);
+        }
+        else
+        {
+            List<Future<Object>> futures = Parallel.submitAll(pool, hessTasks);
+            for(int b = 0; b < futures.size(); b++)
+            {
+                Parallel.get(futures.get(b));
+            }
+            for(int step = 1; step < blocks.length; step *= 2)
+            {
+                for(int b = 0; b + step < blocks.length; b += 2*step)
+                {
+                    add(blocks[b].hess, blocks[b + step].hess);
+                }
+            }
+        }
+
+        // sum over the epochs (original coordinates) + 2*(V*B)_d*sum_i w_i*mu_i*mu_i'
+        double H[] = blocks[0].hess;
+        if(useMean)
+        {
+            double Vmu[] = blocks[0].W; // only used as scratch here
+            MathFunctions.mmul(hessVB, muCov, Vmu, d, n, n);
+            for(int l = 0; l < d*n; l++)
+            {
+                H[l] += 2.0*Vmu[l];
+            }
+        }
+
+        // D = [H*B'; 0] - V*[G; 0] - [G*V; 0]
+        java.util.Arrays.fill(hessD, 0.0);
+        MathFunctions.mmulTransposed(H, B, hessD, d, n, n);
+        for(int a = 0; a < d; a++)
+        {
+            for(int b = 0; b < n; b++)
+            {
+                double sum = 0.0;
+                for(int c = 0; c < n; c++)
+                {
+                    sum += X[a*n + c]*V[c*n + b];
+                }
+                hessD[a*n + b] -= sum;
+            }
+        }
+        for(int a = 0; a < n; a++)
+        {
+            for(int c = 0; c < d; c++)
+            {
+                double v = V[a*n + c];
+                if(v == 0.0)
+                {
+                    continue;
+                }
+                for(int b = 0; b < n; b++)
+                {
+                    hessD[a*n + b] -= v*X[c*n + b];
+                }
+            }
+        }
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < n; b++)
+            {
+                result[a*n + b] = hessD[a*n + b] - hessD[b*n + a];
+            }
+        }
+    }
+
+    /**
+     * Sums up the Hessian times hessVB over a block of epochs, in the original coordinates.
+     */
+    private void hessianEpochs(EpochBlock block)
+    {
+        java.util.Arrays.fill(block.hess, 0.0);
+        for(int k = block.from; k < block.to; k++)
+        {
+            int i = batchEpochs[k];
+            // W = (V*B)_d*S_i, C1 = W*P' + P*W'
+            mmulCovariance(hessVB, i, block.W, d);
+            MathFunctions.mmulTransposed(block.W, P, block.C1, d, n, d);
+            for(int a = 0; a < d; a++)
+            {
+                for(int b = 0; b < a; b++)
+                {
+                    double v = block.C1[a*d + b] + block.C1[b*d + a];
+                    block.C1[a*d + b] = v;
+                    block.C1[b*d + a] = v;
+                }
+                block.C1[a*d + a] *= 2.0;
+            }
+
+            // K*(2*C1*K*P*S_i - 2*W); after the gradient evaluation, PS[k] contains K*P*S_i and C[k] the factor of inv(K)
+            double KPS[] = PS[k];
+            for(int a = 0; a < d; a++)
+            {
+                for(int b = 0; b < n; b++)
+                {
+                    double sum = 0.0;
+                    for(int c = 0; c < d; c++)
+                    {
+                        sum += block.C1[a*d + c]*KPS[c*n + b];
+                    }
+                    block.W[a*n + b] = 2.0*(sum - block.W[a*n + b]);
+                }
+            }
+            MathFunctions.solveCholesky(C[k], block.W, d, n);
+
+            double w = batchScale*weights[i];
+            for(int l = 0; l < d*n; l++)
+            {
+                block.hess[l] += w*block.W[l];
+            }
+        }
+    }
+
+    /**
+     * Makes the rotation of the last evaluation the new current point, i.e. the demixing matrix
+     * is rotated.
+     */
+    public void accept()
+    {
+        if(!rotated)
+        {
+            return;
+        }
+
+        // update demixing matrix
+        rotatedDemixingMatrix(RB);
+        double buf[] = B;
+        B = RB;
+        RB = buf;
+
+        rotated = false;
+        geodesic = false;
+        factorsAtCurrentPoint = factorsAtTrial;
+        factorsAtTrial = false;
+    }
+
+    /**
+     * Rotates the demixing matrix by exp(M) (or its Cayley transform, see setRetraction()) without
+     * evaluating the objective function, i.e. the same as evaluate(M, false) followed by accept().
+     *
+     * @param M antisymmetric n x n matrix
+     */
+    public void rotate(double M[])
+    {
+        if(retraction == SSAParameters.RETRACTION_CAYLEY)
+        {
+            cayley(M, R);
+        }
+        else
+        {
+            expm(M, R);
+        }
+        rotated = true;
+        geodesic = false;
+        gradientAtCurrentPoint = false;
+        factorsAtTrial = false;
+        accept();
+    }
+
+    /**
+     * Replaces the demixing matrix B by G*B for an orthogonal n x n matrix G, e.g. a product of
+     * plane rotations, without evaluating the objective function.
+     *
+     * @param G orthogonal n x n matrix (row by row)
+     */
+    public void applyRotation(double G[])
+    {
+        System.arraycopy(G, 0, R, 0, n*n);
+        rotated = true;
+        geodesic = false;
+        gradientAtCurrentPoint = false;
+        factorsAtTrial = false;
+        accept();
+    }
+
+    /**
+     * Sums up the loss (and optionally the gradient w.r.t. the projection P) over a block of epochs.
+     */
+    private void sumEpochs(EpochBlock block)
+    {
+        if(calcGradient)
+        {
+            java.util.Arrays.fill(block.gradient, 0.0);
+        }
+
+        if(reuseFactors)
+        {
+            // the factors of the last evaluation are at this point: only the solves for the gradient are left
+            if(calcGradient)
+            {
+                for(int k = block.from; k < block.to; k++)
+                {
+                    MathFunctions.solveCholesky(C[k], PS[k], d, n);
+                }
+            }
+        }
+        else
+        {
+            factorize(P, PS, C, logdet, Pmu, block.from, block.to, calcGradient);
+        }
+        block.loss = sumLoss(logdet, Pmu, block.from, block.to);
+        if(!calcGradient)
+        {
+            return;
+        }
+
+        for(int k = block.from; k < block.to; k++)
+        {
+            int i = batchEpochs[k];
+            double w = batchScale*weights[i];
+
+            // gradient -= w * inv(PSP') * PS
+            double CinvPS[] = PS[k];
+            for(int l = 0; l < d*n; l++)
+            {
+                block.gradient[l] -= w*CinvPS[l];
+            }
+            if(useMean)
+            {
+                // gradient += w * P*mu * mu'
+                double m[] = mu[i];
+                for(int a = 0; a < d; a++)
+                {
+                    double c = w*Pmu[k][a];
+                    int ga = a*n;
+                    for(int b = 0; b < n; b++)
+                    {
+                        block.gradient[ga + b] += c*m[b];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes P*S_i, the Cholesky factor of P*S_i*P', its log-determinant and P*mu_i for the
+     * epochs at the positions from, ..., to-1 of the mini-batch, and optionally inv(P*S_i*P')*P*S_i
+     * in place of P*S_i.
+     */
+    private void factorize(double P[], double PS[][], double C[][], double logdet[], double Pmu[][],
+                           int from, int to, boolean solve)
+    {
+        // d x d blocks of the rotated covariance matrices: P*S*P'
+        for(int k = from; k < to; k++)
+        {
+            int i = batchEpochs[k];
+            mmulCovariance(P, i, PS[k], d);
+            MathFunctions.mmulTransposed(PS[k], P, C[k], d, n, d);
+            if(useMean)
+            {
+                MathFunctions.mmul(P, mu[i], Pmu[k], d, n, 1);
+            }
+        }
+
+        // factorize all blocks once: log(det(P*S*P')) and, for the gradient, inv(P*S*P')*P*S
+        MathFunctions.choleskySolve(C, solve ? PS : null, from, to, d, n, logdet);
+    }
+
+    /**
+     * Sums up the loss over the epochs at the positions from, ..., to-1 of the mini-batch.
+     */
+    private double sumLoss(double logdet[], double Pmu[][], int from, int to)
+    {
+        double loss = 0.0;
+        for(int k = from; k < to; k++)
+        {
+            double add = -logdet[k];
+            if(useMean)
+            {
+                for(int j = 0; j < d; j++)
+                {
+                    add += Pmu[k][j]*Pmu[k][j];
+                }
+            }
+            loss += batchScale*weights[batchEpochs[k]] * add;
+        }
+        return loss;
+    }
+
+    /**
+     * Calculates the Cayley transform inv(I - A/2)*(I + A/2) of an n x n matrix without
+     * allocating memory.
+     *
+     * @param A antisymmetric matrix
+     * @param F array for the result
+     */
+    private void cayley(double A[], double F[])
+    {
+        for(int i = 0; i < n*n; i++)
+        {
+            expmU[i] = -0.5*A[i];
+            F[i] = 0.5*A[i];
+        }
+        for(int i = 0; i < n; i++)
+        {
+            expmU[i*n + i] += 1.0;
+            F[i*n + i] += 1.0;
+        }
+        solveInPlace(expmU, F);
+    }
+
+    /**
+     * Calculates the matrix exponential of an n x n matrix without allocating memory.
+     * The same scaled Pade approximation as in SSAMatrix.expm() is used.
+     *
+     * @param A square matrix
+     * @param F array for the result
+     */
+    private void expm(double A[], double F[])
+    {
+        // constants for pade approximation
+        final double c0 = 1.0;
+        final double c1 = 0.5;
+        final double c2 = 0.12;
+        final double c3 = 0.01833333333333333;
+        final double c4 = 0.0019927536231884053;
+        final double c5 = 1.630434782608695E-4;
+        final double c6 = 1.0351966873706E-5;
+        final double c7 = 5.175983436853E-7;
+        final double c8 = 2.0431513566525E-8;
+        final double c9 = 6.306022705717593E-10;
+        final double c10 = 1.4837700484041396E-11;
+        final double c11 = 2.5291534915979653E-13;
+        final double c12 = 2.8101705462199615E-15;
+        final double c13 = 1.5440497506703084E-17;
+
+        double normmax = 0.0;
+        for(int i = 0; i < n*n; i++)
+        {
+            normmax = Math.max(normmax, Math.abs(A[i]));
+        }
+        int j = Math.max(0, 1 + (int)Math.floor(Math.log(normmax)/Math.log(2)));
+        double scale = Math.pow(2, j);
+        for(int i = 0; i < n*n; i++)
+        {
+            expmAs[i] = A[i] / scale; // scaled version of A
+        }
+
+        // calculate D and N using special Horner techniques
+        MathFunctions.mmul(expmAs, expmAs, expmA2, n, n, n);
+        MathFunctions.mmul(expmA2, expmA2, expmA4, n, n, n);
+        MathFunctions.mmul(expmA4, expmA2, expmA6, n, n, n);
+        // U = c0*I + c2*A^2 + c4*A^4 + (c6*I + c8*A^2 + c10*A^4 + c12*A^6)*A^6
+        // V = c1*I + c3*A^2 + c5*A^4 + (c7*I + c9*A^2 + c11*A^4 + c13*A^6)*A^6
+        for(int i = 0; i < n*n; i++)
+        {
+            expmTmp[i] = c8*expmA2[i] + c10*expmA4[i] + c12*expmA6[i];
+            expmV[i] = c9*expmA2[i] + c11*expmA4[i] + c13*expmA6[i];
+        }
+        for(int i = 0; i < n; i++)
+        {
+            expmTmp[i*n + i] += c6;
+            expmV[i*n + i] += c7;
+        }
+        MathFunctions.mmul(expmTmp, expmA6, expmU, n, n, n);
+        MathFunctions.mmul(expmV, expmA6, expmTmp, n, n, n);
+        for(int i = 0; i < n*n; i++)
+        {
+            expmU[i] += c2*expmA2[i] + c4*expmA4[i];
+            expmTmp[i] += c3*expmA2[i] + c5*expmA4[i];
+        }
+        for(int i = 0; i < n; i++)
+        {
+            expmU[i*n + i] += c0;
+            expmTmp[i*n + i] += c1;
+        }
+        // AV = A*V (stored in expmV), N = U + AV (stored in F), D = U - AV (stored in expmU)
+        MathFunctions.mmul(expmAs, expmTmp, expmV, n, n, n);
+        for(int i = 0; i < n*n; i++)
+        {
+            F[i] = expmU[i] + expmV[i];
+            expmU[i] -= expmV[i];
+        }
+
+        // solve DF = N for F
+        solveInPlace(expmU, F);
+
+        // now square j times
+        for(int k = 0; k < j; k++)
+        {
+            MathFunctions.mmul(F, F, expmTmp, n, n, n);
+            System.arraycopy(expmTmp, 0, F, 0, n*n);
+        }
+    }
+
+    /**
+     * Solves D*X = N for X using an LU decomposition with partial pivoting. D is overwritten
+     * by its LU decomposition and N by the solution.
+     */
+    private void solveInPlace(double D[], double N[])
+    {
+        // LU decomposition
+        for(int k = 0; k < n; k++)
+        {
+            int p = k;
+            for(int i = k + 1; i < n; i++)
+            {
+                if(Math.abs(D[i*n + k]) > Math.abs(D[p*n + k]))
+                {
+                    p = i;
+                }
+            }
+            expmPivot[k] = p;
+            if(p != k)
+            {
+                swapRows(D, p, k);
+                swapRows(N, p, k);
+            }
+            double pivot = D[k*n + k];
+            for(int i = k + 1; i < n; i++)
+            {
+                double f = D[i*n + k] / pivot;
+                D[i*n + k] = f;
+                if(f == 0.0)
+                {
+                    continue;
+                }
+                for(int c = k + 1; c < n; c++)
+                {
+                    D[i*n + c] -= f*D[k*n + c];
+                }
+                for(int c = 0; c < n; c++)
+                {
+                    N[i*n + c] -= f*N[k*n + c];
+                }
+            }
+        }
+
+        // back substitution
+        for(int k = n - 1; k >= 0; k--)
+        {
+            double pivot = D[k*n + k];
+            for(int c = 0; c < n; c++)
+            {
+                double sum = N[k*n + c];
+                for(int i = k + 1; i < n; i++)
+                {
+                    sum -= D[k*n + i]*N[i*n + c];
+                }
+                N[k*n + c] = sum / pivot;
+            }
+        }
+    }
+
+    private void swapRows(double A[], int i, int j)
+    {
+        for(int c = 0; c < n; c++)
+        {
+            double buf = A[i*n + c];
+            A[i*n + c] = A[j*n + c];
+            A[j*n + c] = buf;
+        }
+    }
+
+    private void setIdentity(double A[])
+    {
+        java.util.Arrays.fill(A, 0.0);
+        for(int i = 0; i < n; i++)
+        {
+            A[i*n + i] = 1.0;
+        }
+    }
+
+    /**
+     * Adds b to a (element-wise, in place).
+     */
+    private static void add(double a[], double b[])
+    {
+        for(int i = 0; i < a.length; i++)
+        {
+            a[i] += b[i];
+        }
+    }
+
+    /**
+     * C = A*S_i for a rows x n matrix A, with S_i in single or double precision.
+     */
+    private void mmulCovariance(double A[], int i, double C[], int rows)
+    {
+        if(Sf != null)
+        {
+            MathFunctions.mmul(A, Sf[i], C, rows, n, n);
+        }
+        else
+        {
+            MathFunctions.mmul(A, S[i], C, rows, n, n);
+        }
+    }
+
+    /**
+     * Copies a matrix into a one-dimensional array (row by row).
+     *
+     * @param M matrix
+     * @return array
+     */
+    static double[] toArray(SSAMatrix M)
+    {
+        int rows = M.getRows();
+        int cols = M.getColumns();
+        double a[] = new double[rows*cols];
+        for(int i = 0; i < rows; i++)
+        {
+            for(int j = 0; j < cols; j++)
+            {
+                a[i*cols + j] = M.get(i, j);
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Creates a matrix from a one-dimensional array (row by row).
+     *
+     * @param a array
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return matrix
+     */
+    static SSAMatrix toMatrix(double a[], int rows, int cols)
+    {
+        double m[][] = new double[rows][cols];
+        for(int i = 0; i < rows; i++)
+        {
+            System.arraycopy(a, i*cols, m[i], 0, cols);
+        }
+        return new SSAMatrix(m);
+    }
+}
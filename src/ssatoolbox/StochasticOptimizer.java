@@ -0,0 +1,156 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.util.Random;
+
+/**
+ * Riemannian Adam on mini-batches of epochs, followed by the conjugate gradient on all epochs.
+ *
+ * In every pass, the epochs are shuffled and split into mini-batches. For every mini-batch, the
+ * gradient of the objective function restricted to these epochs is computed (see
+ * SSAWorkspace.selectEpochs()) and the demixing matrix is rotated by an Adam step. The moment
+ * estimates are kept as antisymmetric matrices in the coordinates of the current point, i.e.
+ * they are transported by the rotation in the same way as the gradients of L-BFGS. A step costs
+ * batchSize/epochs of a full evaluation, so for data with very many epochs, a pass is about as
+ * expensive as one iteration of the conjugate gradient, but makes many steps. Since the steps
+ * are noisy, the conjugate gradient on all epochs finally converges to the exact solution.
+ */
+class StochasticOptimizer extends Optimizer
+{
+    // constants for Adam
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final SSAParameters par;
+
+    /**
+     * Creates a new stochastic optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    StochasticOptimizer(SSAParameters par)
+    {
+        super(par);
+        this.par = par;
+    }
+
+    protected void run()
+    {
+        int epochs = ws.getNumberOfEpochs();
+        int batchSize = par.getBatchSize();
+        int d = ws.getNumberOfRows();
+        int steps = 0;
+        if(batchSize < epochs && par.getNumberOfPasses() > 0)
+        {
+            Random rng = (random == null) ? new Random(SSAMatrix.nextRandomSeed()) : random;
+            int order[] = new int[epochs];
+            for(int i = 0; i < epochs; i++)
+            {
+                order[i] = i;
+            }
+            int batch[] = new int[batchSize];
+            double grad[] = ws.getGradient();
+            double m[] = new double[n*n];
+            double v[] = new double[n*n];
+            double M[] = new double[n*n];
+            double beta1t = 1.0;
+            double beta2t = 1.0;
+
+            // at least one iteration is left for the polish, which computes the loss on all epochs
+            try
+            {
+                for(int pass = 0; pass < par.getNumberOfPasses() && steps + 1 < maxIterations && !pastDeadline(); pass++)
+                {
+                    // shuffle the epochs (Fisher-Yates)
+                    for(int i = epochs - 1; i > 0; i--)
+                    {
+                        int j = rng.nextInt(i + 1);
+                        int tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                    }
+
+                    double rate = par.getLearningRate() / (1.0 + par.getLearningRateDecay()*pass);
+                    for(int from = 0; from < epochs && steps + 1 < maxIterations && !pastDeadline(); from += batchSize)
+                    {
+                        int count = Math.min(batchSize, epochs - from);
+                        System.arraycopy(order, from, batch, 0, count);
+                        // the gradient of the raw objective function, since the loss of a
+                        // mini-batch may be negative and can then not be normalized
+                        long start = (listener != null) ? System.nanoTime() : 0;
+                        ws.selectEpochs(batch, count);
+                        double batchLoss = ws.evaluate(null, true);
+                        project(grad, d);
+                        if(listener != null)
+                        {
+                            gradientTime = System.nanoTime() - start;
+                        }
+
+                        // Adam step with bias-corrected moment estimates
+                        beta1t *= BETA1;
+                        beta2t *= BETA2;
+                        for(int j = 0; j < M.length; j++)
+                        {
+                            double g = sign*grad[j];
+                            m[j] = BETA1*m[j] + (1.0 - BETA1)*g;
+                            v[j] = BETA2*v[j] + (1.0 - BETA2)*g*g;
+                            M[j] = -rate*(m[j]/(1.0 - beta1t)) / (Math.sqrt(v[j]/(1.0 - beta2t)) + EPSILON);
+                        }
+                        iterationDone(steps, batchLoss, rate);
+                        ws.rotate(M);
+                        steps++;
+                    }
+                }
+            }
+            finally
+            {
+                ws.selectEpochs(null, 0);
+            }
+        }
+
+        // polish on all epochs
+        Optimizer polish = new ConjugateGradientOptimizer(par);
+        polish.setIterationListener(listener, restart, firstIteration + steps);
+        if(hasDeadline)
+        {
+            polish.setDeadline(deadline);
+        }
+        polish.minimize(ws, k, sign < 0, maxIterations - steps);
+        loss = polish.getLoss();
+        iterations = steps + polish.getIterations();
+        converged = polish.isConverged();
+        deadlineReached |= polish.isDeadlineReached();
+    }
+}
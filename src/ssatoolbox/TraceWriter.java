@@ -0,0 +1,76 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Iteration listener which writes every iteration as a line of a CSV file, with the columns
+ * restart, phase (s or n), iteration, loss, gradient norm, step size, line-search trials and the
+ * times for the gradient and the line search in nanoseconds.
+ */
+public class TraceWriter implements IterationListener
+{
+    private final PrintWriter pw;
+
+    /**
+     * Creates the CSV file and writes the header.
+     *
+     * @param f file
+     * @throws IOException if the file cannot be created
+     */
+    public TraceWriter(File f) throws IOException
+    {
+        pw = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+        pw.println("# restart,phase,iteration,loss,gradient_norm,step,line_search_trials,gradient_ns,line_search_ns");
+    }
+
+    public void iterationDone(IterationEvent event)
+    {
+        pw.println(event.restart + "," + (event.nSources ? "n" : "s") + "," + event.iteration + ","
+                   + event.loss + "," + event.gradientNorm + "," + event.step + "," + event.lineSearchTrials + ","
+                   + event.gradientTime + "," + event.lineSearchTime);
+    }
+
+    /**
+     * Writes the remaining lines and closes the file.
+     */
+    public void close()
+    {
+        pw.close();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package ssatoolbox;
+
+/**
+ * Riemannian trust-region Newton method on the rotations. In every iteration, the quadratic model
+ * with the exact Hessian (see SSAWorkspace.hessianTimes()) is minimized within the trust region by
+ * the truncated conjugate gradient method of Steihaug and Toint, which only needs Hessian-vector
+ * products. The inner iterations stop at a relative residual of min(|r0|, 0.1), which gives
+ * quadratic convergence close to the solution.
+ *
+ * The objective function does not change under rotations within the first d and within the last
+ * n - d dimensions, so the Hessian is singular in these directions. The steps are therefore
+ * restricted to the complement (the off-diagonal blocks of M), on which the Hessian of the
+ * quotient is the projected Hessian.
+ */
+class TrustRegionOptimizer extends Optimizer
+{
+    /** The optimization stops if the norm of the (normalized) gradient falls below this threshold times max(1, |loss|) */
+    private static final double GRADIENT_THRESHOLD = 1e-10;
+
+    /** Maximal radius of the trust region (the injectivity radius of the rotations) */
+    private static final double MAX_RADIUS = Math.PI;
+
+    /** Initial radius of the trust region */
+    private static final double INITIAL_RADIUS = 0.5;
+
+    /** Minimal radius of the trust region; below it, no further progress is possible in double precision */
+    private static final double MIN_RADIUS = 1e-12;
+
+    /** Minimal ratio of actual and predicted decrease to accept a step */
+    private static final double RHO_ACCEPT = 0.1;
+
+    /** Relative residual at which the inner iterations stop, at most */
+    private static final double KAPPA = 0.1;
+
+    /**
+     * Creates a new trust-region optimizer.
+     *
+     * @param par class containing the SSA parameters
+     */
+    TrustRegionOptimizer(SSAParameters par)
+    {
+        super(par);
+    }
+
+    protected void run()
+    {
+        double grad[] = new double[n*n];
+        double eta[] = new double[n*n];
+        double Heta[] = new double[n*n];
+        double r[] = new double[n*n];
+        double delta[] = new double[n*n];
+        double Hdelta[] = new double[n*n];
+        double radius = INITIAL_RADIUS;
+        int d = ws.getNumberOfRows();
+        int maxInner = d*(n - d);
+        int i;
+        for(i = 0; i < maxIterations; i++)
+        {
+            if(i > 0 && pastDeadline())
+            {
+                break;
+            }
+
+            // get current objective function value and gradient
+            loss = evaluateGradient();
+            System.arraycopy(ws.getGradient(), 0, grad, 0, grad.length);
+            project(grad, d);
+            double gradNorm = Math.sqrt(inner(grad, grad));
+            if(gradNorm < GRADIENT_THRESHOLD*Math.max(1.0, Math.abs(loss)))
+            {
+                converged = true;
+                break;
+            }
+
+            // truncated conjugate gradient for the trust-region subproblem
+            long start = (listener != null) ? System.nanoTime() : 0;
+            java.util.Arrays.fill(eta, 0.0);
+            java.util.Arrays.fill(Heta, 0.0);
+            System.arraycopy(grad, 0, r, 0, r.length);
+            for(int j = 0; j < delta.length; j++)
+            {
+                delta[j] = -r[j];
+            }
+            double rr = inner(r, r);
+            double r0 = Math.sqrt(rr);
+            double ee = 0.0; // <eta, eta>
+            double ed = 0.0; // <eta, delta>
+            double dd = rr;  // <delta, delta>
+            double stop = r0*Math.min(r0, KAPPA);
+            for(int j = 0; j < maxInner; j++)
+            {
+                hessianTimes(delta, Hdelta);
+                project(Hdelta, d);
+                double dHd = inner(delta, Hdelta);
+                double alpha = rr / dHd;
+                double eeNew = ee + 2*alpha*ed + alpha*alpha*dd;
+                if(dHd <= 0 || eeNew >= radius*radius)
+                {
+                    // negative curvature or leaving the trust region: go to the boundary
+                    double tau = (-ed + Math.sqrt(ed*ed + dd*(radius*radius - ee))) / dd;
+                    axpy(tau, delta, eta);
+                    axpy(tau, Hdelta, Heta);
+                    break;
+                }
+                axpy(alpha, delta, eta);
+                axpy(alpha, Hdelta, Heta);
+                ee = eeNew;
+                axpy(alpha, Hdelta, r);
+                double rrNew = inner(r, r);
+                if(Math.sqrt(rrNew) <= stop)
+                {
+                    break;
+                }
+                double beta = rrNew / rr;
+                rr = rrNew;
+                for(int l = 0; l < delta.length; l++)
+                {
+                    delta[l] = -r[l] + beta*delta[l];
+                }
+                ed = beta*(ed + alpha*dd);
+                dd = rr + beta*beta*dd;
+            }
+
+            // compare actual and predicted decrease (regularized against rounding errors)
+            double lossNew = normalize(ws.evaluate(eta, false));
+            double predicted = -(inner(grad, eta) + 0.5*inner(eta, Heta));
+            double eps = 1e-13*Math.max(1.0, Math.abs(loss));
+            double rho = (loss - lossNew + eps) / (predicted + eps);
+
+            // update trust region radius
+            boolean accept = (rho > RHO_ACCEPT && lossNew < loss);
+            double etaNorm = Math.sqrt(inner(eta, eta));
+            if(rho < 0.25 || !accept)
+            {
+                radius /= 4;
+            }
+            else if(rho > 0.75 && etaNorm >= 0.99*radius)
+            {
+                radius = Math.min(2*radius, MAX_RADIUS);
+            }
+
+            if(listener != null)
+            {
+                lineSearchTime = System.nanoTime() - start;
+                trials = 1;
+                iterationDone(i, loss, accept ? etaNorm : 0.0);
+            }
+
+            if(accept)
+            {
+                ws.accept();
+                loss = lossNew;
+            }
+            else if(radius < MIN_RADIUS)
+            {
+                // no further decrease possible
+                converged = true;
+                break;
+            }
+        }
+        iterations = i;
+    }
+
+    /**
+     * Hessian of the normalized objective function times V.
+     */
+    private void hessianTimes(double V[], double result[])
+    {
+        // the normalized objective is sign*(sqrt(2*F) - c), so its Hessian is
+        // sign/sqrt(2*F)*(Hess F - g*g'), where g is the normalized gradient
+        ws.hessianTimes(V, result);
+        double grad[] = ws.getGradient();
+        double gv = inner(grad, V);
+        double scale = sign / Math.sqrt(2.0*rawLoss);
+        for(int l = 0; l < result.length; l++)
+        {
+            result[l] = scale*(result[l] - gv*grad[l]);
+        }
+    }
+
+    /**
+     * y += a*x
+     */
+    private static void axpy(double a, double x[], double y[])
+    {
+        for(int j = 0; j < x.length; j++)
+        {
+            y[j] += a*x[j];
+        }
+    }
+}
@@ -30,6 +30,8 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
  */
 
+import java.util.ArrayList;
+import java.util.List;
 import junit.framework.*;
 import ssatoolbox.*;
 
@@ -51,7 +53,7 @@ public class TestSSA extends TestCase
         
         data.setTimeSeries(SSAMatrix.zeros(6, 100), null);
         data.setNumberOfEqualSizeEpochs(4); // we would need at least 5 > (6 - 2)/2 + 2 epochs
-        data.epochize();
+        data.epochize(par.isUseCovariance());
         
         boolean exceptionThrown = false;
         try
@@ -82,7 +84,7 @@ public class TestSSA extends TestCase
         
         data.setTimeSeries(SSAMatrix.zeros(4, 100), null);
         data.setNumberOfEqualSizeEpochs(3); // we would need at least 4 > (4 - 2) + 1 epochs
-        data.epochize();
+        data.epochize(par.isUseCovariance());
         
         boolean exceptionThrown = false;
         try
@@ -159,7 +161,7 @@ public class TestSSA extends TestCase
         
         data.setTimeSeries(X, null);
         data.setNumberOfEqualSizeEpochs(4);
-        data.epochize();
+        data.epochize(par.isUseCovariance());
 
         Results res = ssa.optimize(par, data);
         
@@ -179,4 +181,788 @@ public class TestSSA extends TestCase
         double alpha = 180*Math.acos(b2/Math.sqrt(b1*b1 + b2*b2)) / Math.PI;
         assertEquals(0, alpha, 10); // tolerance of 10 degrees
     }
+
+    /**
+     * Tests whether the mean-only solution with the partial eigensolvers (on the matrix of the
+     * means for few epochs, LOBPCG for few stationary or non-stationary sources) gives the same
+     * subspaces and losses as the full eigendecomposition.
+     */
+    public void testOptimizeMeanPartial()
+    {
+        checkMeanSolution(80, 76, 10);
+        checkMeanSolution(80, 4, 100);
+        checkMeanSolution(80, 75, 100);
+    }
+
+    private static void checkMeanSolution(int n, int d, int epochs)
+    {
+        // the means of the non-stationary sources change from epoch to epoch
+        int samplesPerEpoch = 20;
+        java.util.Random rand = new java.util.Random(n + d + epochs);
+        SSAMatrix X = SSAMatrix.zeros(n, epochs*samplesPerEpoch);
+        for(int e = 0; e < epochs; e++)
+        {
+            double offset[] = new double[n];
+            for(int k = d; k < n; k++)
+            {
+                offset[k] = 3.0*rand.nextGaussian();
+            }
+            for(int j = e*samplesPerEpoch; j < (e+1)*samplesPerEpoch; j++)
+            {
+                for(int k = 0; k < n; k++)
+                {
+                    X.set(k, j, offset[k] + rand.nextGaussian());
+                }
+            }
+        }
+        X = SSAMatrix.rand(n, n, rand).mmul(X);
+
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(epochs);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(d);
+        par.setUseMean(true);
+        par.setUseCovariance(false);
+        Results results = new SSA().optimize(par, data);
+
+        // full eigendecomposition of H = sum_i w_i*mu_i*mu_i'
+        SSAMatrix M = X.mmul(SSAMatrix.zeros(epochs*samplesPerEpoch, 1).subi(-1.0/(epochs*samplesPerEpoch)));
+        SSAMatrix H = SSAMatrix.zeros(n, n);
+        for(int e = 0; e < epochs; e++)
+        {
+            SSAMatrix sel = SSAMatrix.zeros(epochs*samplesPerEpoch, 1);
+            for(int j = e*samplesPerEpoch; j < (e+1)*samplesPerEpoch; j++)
+            {
+                sel.set(j, 0, 1.0/samplesPerEpoch);
+            }
+            SSAMatrix mu = X.mmul(sel).subi(M);
+            H.addi(mu.mmul(mu.transpose()).muli(samplesPerEpoch));
+        }
+        SSAMatrix E[] = H.symmetricEigenvectors();
+        SSAMatrix diag = E[1].diag();
+        SSA ssa = new SSA();
+        double loss_s = ssa.normalizeObjectiveFunction(diag.getRange(0, d, 0, 1).sum(), epochs*d);
+        double loss_n = ssa.normalizeObjectiveFunction(diag.getRange(d, n, 0, 1).sum(), epochs*(n - d));
+        assertEquals(loss_s, results.loss_s, 1e-6*Math.abs(loss_s));
+        assertEquals(loss_n, results.loss_n, 1e-6*Math.abs(loss_n));
+
+        // the stationary projection is orthogonal to the non-stationary eigenvectors
+        SSAMatrix overlap = results.Ps.mmul(E[0].getRange(0, n, d, n));
+        assertTrue(overlap.normmax() < 1e-6);
+        // B is orthogonal
+        SSAMatrix I = results.Ps.mmul(results.Bs).sub(SSAMatrix.eye(d));
+        assertTrue(I.normmax() < 1e-10);
+    }
+
+    /**
+     * Generates a data set with the given number of stationary and non-stationary sources,
+     * where the variance of the non-stationary sources changes from epoch to epoch.
+     */
+    private static SSAMatrix generateData(int d, int n, int epochs, int samplesPerEpoch, long seed)
+    {
+        java.util.Random rand = new java.util.Random(seed);
+        SSAMatrix X = SSAMatrix.zeros(n, epochs*samplesPerEpoch);
+        for(int e = 0; e < epochs; e++)
+        {
+            double scale[] = new double[n];
+            for(int k = 0; k < n; k++)
+            {
+                scale[k] = (k < d) ? 1.0 : 0.5 + 4.0*rand.nextDouble();
+            }
+            for(int j = e*samplesPerEpoch; j < (e+1)*samplesPerEpoch; j++)
+            {
+                for(int k = 0; k < n; k++)
+                {
+                    X.set(k, j, scale[k]*rand.nextGaussian());
+                }
+            }
+        }
+
+        // mix the sources
+        return SSAMatrix.rand(n, n, rand).mmul(X);
+    }
+
+    /**
+     * Runs SSA with a fixed random seed.
+     */
+    private static Results runSeeded(SSAMatrix X, SSAParameters par, int epochs, long seed)
+    {
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(epochs);
+        SSAMatrix.setRandomSeed(seed);
+        return new SSA().optimize(par, data);
+    }
+
+    /**
+     * Runs SSA with a fixed random seed and collects the events of all iterations.
+     */
+    private static Results runTraced(SSAMatrix X, SSAParameters par, int epochs, long seed,
+                                     final List<IterationEvent> events)
+    {
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(epochs);
+        SSAMatrix.setRandomSeed(seed);
+        SSA ssa = new SSA();
+        ssa.addIterationListener(new IterationListener() {
+            public void iterationDone(IterationEvent event) {
+                events.add(event);
+            }
+        });
+        return ssa.optimize(par, data);
+    }
+
+    /**
+     * Tests whether running the restarts in parallel gives exactly the same result as running them
+     * one after another.
+     */
+    public void testParallelRestarts()
+    {
+        SSAMatrix X = generateData(2, 5, 12, 100, 42);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(4);
+
+        par.setNumberOfThreads(1);
+        Results seq = runSeeded(X, par, 12, 7);
+        par.setNumberOfThreads(3);
+        Results parallel = runSeeded(X, par, 12, 7);
+
+        assertEquals(seq.loss_s, parallel.loss_s, 0);
+        assertEquals(seq.loss_n, parallel.loss_n, 0);
+        for(int i = 0; i < seq.Ps.getRows(); i++)
+        {
+            for(int j = 0; j < seq.Ps.getColumns(); j++)
+            {
+                assertEquals(seq.Ps.get(i, j), parallel.Ps.get(i, j), 0);
+            }
+        }
+    }
+
+    /**
+     * Tests whether pipelining the optimization of the s- and n-sources gives exactly the same
+     * result as running them one after another, and whether the random restarts of the n-sources
+     * run while the s-sources are still optimized.
+     */
+    public void testPipelinedPhases()
+    {
+        SSAMatrix X = generateData(2, 5, 12, 100, 48);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(4);
+        par.setNumberOfThreads(3);
+
+        Results seq = runSeeded(X, par, 12, 31);
+        par.setPipelinePhases(true);
+        Results pipelined = runSeeded(X, par, 12, 31);
+
+        assertEquals(seq.loss_s, pipelined.loss_s, 0);
+        assertEquals(seq.loss_n, pipelined.loss_n, 0);
+        assertEquals(seq.iterations_n, pipelined.iterations_n);
+        for(int i = 0; i < seq.Pn.getRows(); i++)
+        {
+            for(int j = 0; j < seq.Pn.getColumns(); j++)
+            {
+                assertEquals(seq.Pn.get(i, j), pipelined.Pn.get(i, j), 0);
+            }
+        }
+
+        // slow down the iterations of the s-sources, so that the n-sources get the processor
+        final List<IterationEvent> events = new ArrayList<IterationEvent>();
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(12);
+        SSAMatrix.setRandomSeed(31);
+        SSA ssa = new SSA();
+        ssa.addIterationListener(new IterationListener() {
+            public void iterationDone(IterationEvent event) {
+                events.add(event);
+                if(!event.nSources)
+                {
+                    try
+                    {
+                        Thread.sleep(2);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        Results traced = ssa.optimize(par, data);
+        assertEquals(seq.loss_n, traced.loss_n, 0);
+        int firstN = -1;
+        int lastS = -1;
+        for(int i = 0; i < events.size(); i++)
+        {
+            if(!events.get(i).nSources)
+            {
+                lastS = i;
+            }
+            else if(firstN < 0)
+            {
+                firstN = i;
+            }
+        }
+        assertTrue(firstN >= 0 && firstN < lastS);
+    }
+
+    /**
+     * Tests whether an iteration listener receives the iterations of all restarts of both phases
+     * in order, and whether it does not change the result.
+     */
+    public void testIterationListener()
+    {
+        SSAMatrix X = generateData(2, 5, 12, 100, 48);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(3);
+        par.setNumberOfThreads(2);
+
+        Results plain = runSeeded(X, par, 12, 31);
+
+        final List<IterationEvent> events = new ArrayList<IterationEvent>();
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(12);
+        SSAMatrix.setRandomSeed(31);
+        SSA ssa = new SSA();
+        ssa.addIterationListener(new IterationListener() {
+            public void iterationDone(IterationEvent event) {
+                events.add(event);
+            }
+        });
+        Results traced = ssa.optimize(par, data);
+
+        assertEquals(plain.loss_s, traced.loss_s, 0);
+        assertEquals(plain.loss_n, traced.loss_n, 0);
+        // next iteration per restart and phase
+        int next[][] = new int[2][3];
+        for(IterationEvent event : events)
+        {
+            int phase = event.nSources ? 1 : 0;
+            assertEquals(next[phase][event.restart], event.iteration);
+            next[phase][event.restart]++;
+            assertTrue(event.lineSearchTrials >= 1 && event.lineSearchTrials <= 10);
+            assertTrue(event.gradientTime >= 0 && event.lineSearchTime >= 0);
+            assertFalse(Double.isNaN(event.loss) || Double.isNaN(event.gradientNorm));
+        }
+        for(int phase = 0; phase < 2; phase++)
+        {
+            for(int restart = 0; restart < 3; restart++)
+            {
+                assertTrue(next[phase][restart] > 0);
+            }
+        }
+    }
+
+    /**
+     * Tests whether no restart runs beyond the iteration limit, whether the time limit skips the
+     * later restarts, and whether the result still contains both phases.
+     */
+    public void testBudget()
+    {
+        SSAMatrix X = generateData(2, 5, 12, 100, 48);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(3);
+
+        Results full = runSeeded(X, par, 12, 31);
+        assertFalse(full.budgetExhausted);
+        assertTrue(full.iterations_s > 3 && full.iterations_n > 3);
+
+        par.setMaxIterations(3);
+        List<IterationEvent> events = new ArrayList<IterationEvent>();
+        Results capped = runTraced(X, par, 12, 31, events);
+        assertTrue(capped.budgetExhausted);
+        assertTrue(capped.iterations_s <= 3 && capped.iterations_n <= 3);
+        assertNotNull(capped.Ps);
+        assertNotNull(capped.Pn);
+        for(IterationEvent event : events)
+        {
+            assertTrue(event.iteration < 3);
+        }
+
+        // a time limit which is much too short for all restarts; the first restart of each phase
+        // is run anyway
+        par.setMaxIterations(0);
+        par.setNumberOfRestarts(20);
+        par.setTimeLimit(1);
+        events.clear();
+        Results timed = runTraced(X, par, 12, 31, events);
+        assertTrue(timed.budgetExhausted);
+        assertNotNull(timed.Ps);
+        assertNotNull(timed.Pn);
+        boolean started[][] = new boolean[2][20];
+        for(IterationEvent event : events)
+        {
+            started[event.nSources ? 1 : 0][event.restart] = true;
+        }
+        for(int phase = 0; phase < 2; phase++)
+        {
+            assertTrue(started[phase][0]);
+            assertFalse(started[phase][19]);
+        }
+    }
+
+    /**
+     * Tests whether evaluating the epochs in parallel is deterministic and agrees with the
+     * sequential evaluation.
+     */
+    public void testParallelEpochs()
+    {
+        SSAMatrix X = generateData(2, 5, 40, 50, 43);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(2);
+
+        Results seq = runSeeded(X, par, 40, 11);
+        par.setNumberOfEpochThreads(3);
+        Results parallel1 = runSeeded(X, par, 40, 11);
+        Results parallel2 = runSeeded(X, par, 40, 11);
+
+        assertEquals(parallel1.loss_s, parallel2.loss_s, 0);
+        assertEquals(parallel1.loss_n, parallel2.loss_n, 0);
+        assertEquals(seq.loss_s, parallel1.loss_s, 1e-6);
+        assertEquals(seq.loss_n, parallel1.loss_n, 1e-6);
+    }
+
+    /**
+     * Tests whether the speculative line search takes the same steps as the sequential line
+     * search along the geodesic, for the conjugate gradient and L-BFGS.
+     */
+    public void testSpeculativeLineSearch()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 44);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(2);
+        par.setGeodesicLineSearch(true);
+
+        for(int optimizer : new int[] { SSAParameters.OPTIMIZER_CG, SSAParameters.OPTIMIZER_LBFGS })
+        {
+            par.setOptimizer(optimizer);
+            par.setNumberOfLineSearchThreads(1);
+            Results seq = runSeeded(X, par, 20, 17);
+            par.setNumberOfLineSearchThreads(3);
+            Results spec = runSeeded(X, par, 20, 17);
+
+            assertEquals(seq.loss_s, spec.loss_s, 0);
+            assertEquals(seq.loss_n, spec.loss_n, 0);
+            assertEquals(seq.iterations, spec.iterations);
+        }
+    }
+
+    /**
+     * Tests whether L-BFGS finds solutions which are at least as good as the ones of the
+     * conjugate gradient.
+     */
+    public void testLBFGS()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 44);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+
+        Results cg = runSeeded(X, par, 20, 13);
+        par.setOptimizer(SSAParameters.OPTIMIZER_LBFGS);
+        Results lbfgs = runSeeded(X, par, 20, 13);
+
+        assertTrue(lbfgs.converged);
+        // the s-sources minimize the loss, the n-sources maximize it
+        assertTrue(lbfgs.loss_s <= cg.loss_s + 1e-4*Math.abs(cg.loss_s));
+        assertTrue(lbfgs.loss_n >= cg.loss_n - 1e-4*Math.abs(cg.loss_n));
+    }
+
+    /**
+     * Tests whether the trust-region method converges to solutions which are at least as good as
+     * the ones of the conjugate gradient.
+     */
+    public void testTrustRegion()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 44);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+
+        Results cg = runSeeded(X, par, 20, 13);
+        par.setOptimizer(SSAParameters.OPTIMIZER_TRUST_REGION);
+        Results tr = runSeeded(X, par, 20, 13);
+
+        assertTrue(tr.converged);
+        assertTrue(tr.loss_s <= cg.loss_s + 1e-4*Math.abs(cg.loss_s));
+        assertTrue(tr.loss_n >= cg.loss_n - 1e-4*Math.abs(cg.loss_n));
+    }
+
+    /**
+     * Tests whether every restart starts with sweeps over the d*(n - d) planes of rotations,
+     * whether no sweep increases the loss, and whether the polished solutions are at least as good
+     * as the ones of the conjugate gradient.
+     */
+    public void testGivens()
+    {
+        // with d*(n - d) = 15 planes, the sweeps can be told apart from the iterations of the
+        // polish, whose line search evaluates at most 10 step sizes
+        SSAMatrix X = generateData(3, 8, 20, 100, 44);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(3);
+        par.setNumberOfRestarts(5);
+
+        Results cg = runSeeded(X, par, 20, 13);
+        par.setOptimizer(SSAParameters.OPTIMIZER_GIVENS);
+        List<IterationEvent> events = new ArrayList<IterationEvent>();
+        Results givens = runTraced(X, par, 20, 13, events);
+
+        // number of sweeps and loss at the start of the last sweep per phase and restart
+        int sweeps[][] = new int[2][5];
+        double sweepLoss[][] = new double[2][5];
+        for(IterationEvent event : events)
+        {
+            int phase = event.nSources ? 1 : 0;
+            int count = sweeps[phase][event.restart];
+            if(event.lineSearchTrials == 15)
+            {
+                // the sweeps come before the polish
+                assertEquals(count, event.iteration);
+                sweeps[phase][event.restart]++;
+            }
+            else if(event.iteration > count)
+            {
+                continue;
+            }
+            // the loss at the start of the next sweep or of the polish
+            if(count > 0)
+            {
+                assertTrue(event.loss <= sweepLoss[phase][event.restart]);
+            }
+            sweepLoss[phase][event.restart] = event.loss;
+        }
+        for(int phase = 0; phase < 2; phase++)
+        {
+            for(int restart = 0; restart < 5; restart++)
+            {
+                assertTrue(sweeps[phase][restart] > 0);
+            }
+        }
+
+        assertTrue(givens.converged);
+        assertTrue(givens.loss_s <= cg.loss_s + 1e-4*Math.abs(cg.loss_s));
+        assertTrue(givens.loss_n >= cg.loss_n - 1e-4*Math.abs(cg.loss_n));
+    }
+
+    /**
+     * Tests whether storing the covariance matrices in single precision, followed by the
+     * refinement in double precision, gives the same losses as the double precision optimization
+     * (up to a relative tolerance of 1e-6, if both end up in the same local optimum).
+     */
+    public void testSinglePrecision()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 40);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+
+        Results dbl = runSeeded(X, par, 20, 13);
+        par.setSinglePrecision(true);
+        Results sgl = runSeeded(X, par, 20, 13);
+
+        assertTrue(sgl.converged);
+        assertEquals(dbl.loss_s, sgl.loss_s, 1e-6*Math.abs(dbl.loss_s));
+        assertEquals(dbl.loss_n, sgl.loss_n, 1e-6*Math.abs(dbl.loss_n));
+    }
+
+    /**
+     * Tests whether projecting the data onto its principal components removes channels without
+     * variance: SSA on copies of the data in 8 channels, which span only 5 dimensions, gives the
+     * same losses as on the 5-dimensional data, with the projections in the 8 channels.
+     */
+    public void testPrincipalComponents()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 40);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+        Results direct = runSeeded(X, par, 20, 13);
+
+        // embed the data into 8 channels by a matrix with orthonormal columns
+        SSAMatrix R = SSAMatrix.rand(8, 8, new java.util.Random(3));
+        SSAMatrix Q = R.add(R.transpose()).symmetricEigenvectors()[0].getRange(0, 8, 0, 5);
+        Data data = new Data();
+        data.setTimeSeries(Q.mmul(X), null);
+        data.setNumberOfEqualSizeEpochs(20);
+        data.setRetainedVariance(0.999999);
+        SSAMatrix.setRandomSeed(13);
+        Results reduced = new SSA().optimize(par, data);
+
+        assertEquals(5, data.getNumberOfReducedDimensions());
+        assertEquals(8, reduced.Ps.getColumns());
+        assertEquals(3, reduced.Pn.getRows());
+        assertEquals(8, reduced.Bs.getRows());
+        assertEquals(direct.loss_s, reduced.loss_s, 1e-6*Math.abs(direct.loss_s));
+        assertEquals(direct.loss_n, reduced.loss_n, 1e-6*Math.abs(direct.loss_n));
+        // the projection onto the stationary sources is the same (up to the convergence tolerance)
+        SSAMatrix PsQ = reduced.Ps.mmul(Q);
+        assertTrue(PsQ.mmul(direct.Bn).normmax() < 1e-4*PsQ.normmax());
+    }
+
+    /**
+     * Tests whether the stochastic optimizer makes one step per mini-batch of epochs and then
+     * needs fewer iterations on all epochs than the conjugate gradient, whether its solutions are
+     * at least as good, and whether the mini-batches only depend on the seed (and not on the
+     * number of threads).
+     */
+    public void testStochastic()
+    {
+        SSAMatrix X = generateData(2, 5, 200, 20, 44);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+
+        List<IterationEvent> cgEvents = new ArrayList<IterationEvent>();
+        Results cg = runTraced(X, par, 200, 13, cgEvents);
+        par.setOptimizer(SSAParameters.OPTIMIZER_STOCHASTIC);
+        par.setBatchSize(16);
+        List<IterationEvent> events = new ArrayList<IterationEvent>();
+        Results seq = runTraced(X, par, 200, 13, events);
+
+        // every restart of both phases makes 13 steps (200 epochs in batches of 16) per pass,
+        // followed by the polish on all epochs
+        int steps = par.getNumberOfPasses()*13;
+        int batchSteps = 0;
+        for(IterationEvent event : events)
+        {
+            if(event.iteration < steps)
+            {
+                batchSteps++;
+            }
+        }
+        assertEquals(2*5*steps, batchSteps);
+        assertTrue(events.size() - batchSteps < cgEvents.size());
+        par.setNumberOfThreads(3);
+        Results parallel = runSeeded(X, par, 200, 13);
+
+        assertTrue(seq.converged);
+        assertEquals(seq.loss_s, parallel.loss_s, 0);
+        assertEquals(seq.loss_n, parallel.loss_n, 0);
+        assertTrue(seq.loss_s <= cg.loss_s + 1e-4*Math.abs(cg.loss_s));
+        assertTrue(seq.loss_n >= cg.loss_n - 1e-4*Math.abs(cg.loss_n));
+    }
+
+    /**
+     * Tests whether the successive halving of the restarts is independent of the number of threads
+     * and finds a solution which is as good as the one of running all restarts to convergence.
+     */
+    public void testSuccessiveHalving()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 45);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(8);
+
+        Results full = runSeeded(X, par, 20, 17);
+        par.setRoundIterations(5);
+        Results seq = runSeeded(X, par, 20, 17);
+        par.setNumberOfThreads(3);
+        Results parallel = runSeeded(X, par, 20, 17);
+
+        assertTrue(seq.converged);
+        assertEquals(seq.loss_s, parallel.loss_s, 0);
+        assertEquals(seq.loss_n, parallel.loss_n, 0);
+        assertTrue(seq.loss_s <= full.loss_s + 1e-3*Math.abs(full.loss_s));
+        assertTrue(seq.loss_n >= full.loss_n - 1e-3*Math.abs(full.loss_n));
+    }
+
+    /**
+     * Tests whether two restarts from screened candidates find a solution which is as good as the
+     * one of eight random restarts, independently of the number of threads.
+     */
+    public void testCandidateScreening()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 47);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(8);
+        Results full = runSeeded(X, par, 20, 29);
+
+        par.setNumberOfRestarts(2);
+        par.setNumberOfCandidates(64);
+        Results seq = runSeeded(X, par, 20, 29);
+        par.setNumberOfThreads(3);
+        par.setPipelinePhases(true);
+        Results parallel = runSeeded(X, par, 20, 29);
+
+        assertTrue(seq.converged);
+        assertEquals(seq.loss_s, parallel.loss_s, 0);
+        assertEquals(seq.loss_n, parallel.loss_n, 0);
+        assertTrue(seq.loss_s <= full.loss_s + 1e-3*Math.abs(full.loss_s));
+        assertTrue(seq.loss_n >= full.loss_n - 1e-3*Math.abs(full.loss_n));
+    }
+
+    /**
+     * Tests whether jobs which run at the same time on the engine give the same results as
+     * SSA.optimize() one after another, even if the data and the parameters are changed after
+     * the jobs have been submitted.
+     */
+    public void testEngine() throws Exception
+    {
+        SSAMatrix X1 = generateData(2, 5, 20, 100, 48);
+        SSAMatrix X2 = generateData(2, 5, 20, 100, 49);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(3);
+        Results expected1 = runSeeded(X1, par, 20, 31);
+        Results expected2 = runSeeded(X2, par, 20, 37);
+
+        SSAEngine engine = new SSAEngine(2);
+        Data data = new Data();
+        data.setTimeSeries(new SSAMatrix(X1), null);
+        data.setNumberOfEqualSizeEpochs(20);
+        java.util.concurrent.Future<Results> job1 = engine.submit(par, data, 31);
+        data.setTimeSeries(new SSAMatrix(X2), null);
+        java.util.concurrent.Future<Results> job2 = engine.submit(par, data, 37);
+        data.setNumberOfEqualSizeEpochs(10);
+        par.setNumberOfStationarySources(3);
+        engine.shutdown();
+
+        Results r1 = job1.get();
+        Results r2 = job2.get();
+        assertEquals(expected1.loss_s, r1.loss_s, 0);
+        assertEquals(expected1.loss_n, r1.loss_n, 0);
+        assertEquals(expected2.loss_s, r2.loss_s, 0);
+        assertEquals(expected2.loss_n, r2.loss_n, 0);
+        assertEquals(2, r2.d);
+    }
+
+    /**
+     * Tests whether the resampling test accepts the true number of stationary sources and rejects
+     * a larger one, and whether its result does not depend on the number of threads.
+     */
+    public void testPermutationTest()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 50);
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(20);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfRestarts(2);
+
+        PermutationTest test = new PermutationTest(data, 10);
+        PermutationTest.Outcome seq = test.test(par, new int[]{3, 2}, 19, PermutationTest.RESAMPLING_PERMUTATION, 53);
+        par.setNumberOfThreads(3);
+        PermutationTest.Outcome parallel = test.test(par, new int[]{2, 3}, 19, PermutationTest.RESAMPLING_PERMUTATION, 53);
+
+        assertEquals(2, seq.d[0]);
+        assertTrue(seq.pValue[0] > 0.1);
+        assertEquals(0.05, seq.pValue[1], 1e-12);
+        for(int i = 0; i < 2; i++)
+        {
+            assertEquals(seq.loss[i], parallel.loss[i], 0);
+            assertEquals(seq.pValue[i], parallel.pValue[i], 0);
+        }
+    }
+
+    /**
+     * Tests whether a warm start from a previous solution (given by other bases of the same
+     * subspaces) converges quickly to a solution which is at least as good.
+     */
+    public void testWarmStart()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 46);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setNumberOfRestarts(5);
+        Results cold = runSeeded(X, par, 20, 19);
+
+        // change the bases of the subspaces; only the subspaces are used for the warm start
+        SSAMatrix Ps = new SSAMatrix(new double[][]{{2, 1}, {0, -3}}).mmul(cold.Ps);
+        SSAMatrix Pn = cold.Pn.mul(0.5);
+        par.setNumberOfRestarts(1);
+        par.setWarmStart(Ps, Pn);
+        Results warm = runSeeded(X, par, 20, 23);
+
+        assertTrue(warm.converged);
+        assertTrue(warm.iterations_s < cold.iterations_s);
+        assertTrue(warm.iterations_n < cold.iterations_n);
+        assertTrue(warm.loss_s <= cold.loss_s + 1e-6*Math.abs(cold.loss_s));
+        assertTrue(warm.loss_n >= cold.loss_n - 1e-6*Math.abs(cold.loss_n));
+    }
+
+    /**
+     * Tests whether a warm start whose projection onto the non-stationary subspace has more than
+     * n - d rows is rejected.
+     */
+    public void testWarmStartTooManyRows()
+    {
+        java.util.Random rand = new java.util.Random(5);
+        Data data = new Data();
+        data.setTimeSeries(generateData(2, 5, 20, 100, 46), null);
+        data.setNumberOfEqualSizeEpochs(20);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfStationarySources(2);
+        par.setWarmStart(SSAMatrix.rand(2, 5, rand), SSAMatrix.rand(4, 5, rand));
+
+        try
+        {
+            new SSA().optimize(par, data);
+            fail("a 4 x 5 projection onto the non-stationary subspace has been accepted for d = 2");
+        }
+        catch(IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().indexOf("at most 3 rows") >= 0);
+        }
+    }
+
+    /**
+     * Tests whether the sweep over the number of stationary sources returns one converged result
+     * per d in ascending order, computes the epoch moments only once and is deterministic for a
+     * fixed number of threads.
+     */
+    public void testSweep()
+    {
+        SSAMatrix X = generateData(2, 5, 20, 100, 47);
+        SSAParameters par = new SSAParameters();
+        par.setNumberOfRestarts(3);
+        par.setNumberOfThreads(2);
+        int ds[] = {3, 1, 2};
+
+        Results sweep1[] = sweepSeeded(X, par, 20, ds, 29);
+
+        final int epochizations[] = new int[1];
+        Data data = new Data() {
+            public void epochize(boolean useCovariance) {
+                epochizations[0]++;
+                super.epochize(useCovariance);
+            }
+        };
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(20);
+        SSAMatrix.setRandomSeed(29);
+        Results sweep2[] = new SSA().sweep(par, data, ds);
+        assertEquals(1, epochizations[0]);
+
+        assertEquals(3, sweep1.length);
+        for(int i = 0; i < sweep1.length; i++)
+        {
+            assertEquals(i + 1, sweep1[i].d);
+            assertEquals(i + 1, sweep1[i].Ps.getRows());
+            assertTrue(sweep1[i].converged);
+            assertEquals(sweep1[i].loss_s, sweep2[i].loss_s, 0);
+            assertEquals(sweep1[i].loss_n, sweep2[i].loss_n, 0);
+        }
+    }
+
+    /**
+     * Runs a sweep over the number of stationary sources with a fixed random seed.
+     */
+    private static Results[] sweepSeeded(SSAMatrix X, SSAParameters par, int epochs, int ds[], long seed)
+    {
+        Data data = new Data();
+        data.setTimeSeries(X, null);
+        data.setNumberOfEqualSizeEpochs(epochs);
+        SSAMatrix.setRandomSeed(seed);
+        return new SSA().sweep(par, data, ds);
+    }
 }
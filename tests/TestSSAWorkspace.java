@@ -0,0 +1,388 @@
+/*
+
+Copyright (c) 2010, Jan Saputra Müller, Paul von Bünau, Frank C. Meinecke,
+Franz J. Kiraly and Klaus-Robert Müller.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or other
+ materials provided with the distribution.
+
+* Neither the name of the Berlin Institute of Technology (Technische Universität
+Berlin) nor the names of its contributors may be used to endorse or promote
+products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+import java.lang.management.ManagementFactory;
+import junit.framework.*;
+import ssatoolbox.*;
+
+public class TestSSAWorkspace extends TestCase
+{
+    /**
+     * Creates a time series of epochs of 50 samples, whose variance changes between the epochs in
+     * all but the first two dimensions.
+     */
+    private static SSAMatrix randomTimeSeries(int n, int epochs)
+    {
+        java.util.Random rand = new java.util.Random(1);
+        SSAMatrix X = SSAMatrix.zeros(n, epochs*50);
+        for(int j = 0; j < X.getColumns(); j++)
+        {
+            double scale = 1.0 + (j / 50) % 3;
+            for(int k = 0; k < n; k++)
+            {
+                X.set(k, j, (k < 2 ? 1.0 : scale)*rand.nextGaussian());
+            }
+        }
+        return X;
+    }
+
+    /**
+     * Creates a data set with random epoch covariance matrices and means.
+     */
+    private static Data randomData(int n, int epochs)
+    {
+        Data data = new Data();
+        data.setTimeSeries(randomTimeSeries(n, epochs), null);
+        data.setNumberOfEqualSizeEpochs(epochs);
+        data.epochize(true);
+        return data;
+    }
+
+    /**
+     * Tests whether the iterations of the conjugate gradient optimizer (gradient, backtracking line
+     * search and accepting a step) do not allocate memory once the workspace has been created.
+     * What the optimizer allocates per run does not depend on the number of iterations, so a run
+     * from a random initialization is compared with a run from its solution, which stops after
+     * the first iteration.
+     */
+    public void testAllocationFree()
+    {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+        {
+            return; // allocation counters are not available on this JVM
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if(!bean.isThreadAllocatedMemorySupported())
+        {
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        int n = 8;
+        int d = 2;
+        SSAMatrix X = randomTimeSeries(n, 20);
+        Data data = randomData(n, 20);
+        SSAParameters par = new SSAParameters();
+        int k = (data.getNumberOfEpochs()*d*(d+3)) / 2;
+        // random rotations of the whitened data
+        SSAMatrix W = MathFunctions.whitening(MathFunctions.cov(X));
+
+        // warm up
+        for(int i = 0; i < 10; i++)
+        {
+            SSAWorkspace ws = new SSAWorkspace(data, MathFunctions.randRot(n, new java.util.Random(i)).mmuli(W), d, true, null, 1);
+            Optimizer.create(par).minimize(ws, k, false);
+        }
+
+        SSAWorkspace wsLong = new SSAWorkspace(data, MathFunctions.randRot(n, new java.util.Random(11)).mmuli(W), d, true, null, 1);
+        Optimizer longRun = Optimizer.create(par);
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        longRun.minimize(wsLong, k, false);
+        long allocatedLong = bean.getThreadAllocatedBytes(threadId) - before;
+
+        SSAWorkspace wsShort = new SSAWorkspace(data, wsLong.getDemixingMatrix(), d, true, null, 1);
+        Optimizer shortRun = Optimizer.create(par);
+        before = bean.getThreadAllocatedBytes(threadId);
+        shortRun.minimize(wsShort, k, false);
+        long allocatedShort = bean.getThreadAllocatedBytes(threadId) - before;
+        long allocated = allocatedLong - allocatedShort;
+
+        int iterations = longRun.getIterations() - shortRun.getIterations();
+        assertTrue("only " + iterations + " more iterations", iterations >= 20);
+        // allow for a few bytes of noise, but not for anything proportional to the iterations
+        assertTrue("allocated " + allocated + " bytes in " + iterations + " more iterations", allocated < 1024);
+    }
+
+    /**
+     * Tests whether the gradient agrees with finite differences of the objective function.
+     */
+    public void testGradient()
+    {
+        int n = 5;
+        Data data = randomData(n, 10);
+        SSAWorkspace ws = new SSAWorkspace(data, MathFunctions.randRot(n, new java.util.Random(3)), 2, true, null, 1);
+        double f0 = ws.evaluate(null, true);
+        double grad[] = ws.getGradient().clone();
+
+        double h = 1e-6;
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = a + 1; b < n; b++)
+            {
+                double M[] = new double[n*n];
+                M[a*n + b] = h;
+                M[b*n + a] = -h;
+                double f1 = ws.evaluate(M, false);
+                // the gradient is antisymmetric and scaled like the one of the original implementation
+                assertEquals(-grad[a*n + b], grad[b*n + a], 1e-10);
+                assertEquals((f1 - f0)/h, grad[a*n + b], 1e-3*Math.max(1.0, Math.abs(grad[a*n + b])));
+            }
+        }
+    }
+
+    /**
+     * Tests whether the rotations along the decomposed search direction agree with the matrix
+     * exponential and with the Cayley transform.
+     */
+    public void testGeodesic()
+    {
+        checkGeodesic(SSAParameters.RETRACTION_EXPM);
+        checkGeodesic(SSAParameters.RETRACTION_CAYLEY);
+    }
+
+    private void checkGeodesic(int retraction)
+    {
+        int n = 6;
+        Data data = randomData(n, 12);
+        SSAWorkspace ws = new SSAWorkspace(data, MathFunctions.randRot(n, new java.util.Random(4)), 2, true, null, 1);
+        ws.setRetraction(retraction);
+
+        java.util.Random rand = new java.util.Random(5);
+        double D[] = new double[n*n];
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < a; b++)
+            {
+                D[a*n + b] = rand.nextGaussian();
+                D[b*n + a] = -D[a*n + b];
+            }
+        }
+
+        ws.setSearchDirection(D);
+        for(double t = 1.0; t > 1e-3; t *= 0.4)
+        {
+            double M[] = new double[n*n];
+            for(int l = 0; l < M.length; l++)
+            {
+                M[l] = t*D[l];
+            }
+            double f = ws.evaluate(M, true);
+            SSAMatrix R = ws.getRotation();
+            double grad[] = ws.getGradient().clone();
+            assertTrue(R.mmul(R.transpose()).sub(SSAMatrix.eye(n)).normmax() < 1e-12);
+
+            assertEquals(f, ws.evaluateAlong(t, true), 1e-9*Math.abs(f));
+            assertTrue(R.sub(ws.getRotation()).normmax() < 1e-12);
+            for(int l = 0; l < grad.length; l++)
+            {
+                assertEquals(grad[l], ws.getGradient()[l], 1e-8*Math.max(1.0, Math.abs(grad[l])));
+            }
+        }
+
+        // accepting a step along the geodesic gives the same demixing matrix
+        ws.evaluateAlong(0.3, false);
+        SSAMatrix R = ws.getRotation();
+        SSAMatrix B = ws.getDemixingMatrix();
+        ws.accept();
+        assertTrue(R.mmul(B).sub(ws.getDemixingMatrix()).normmax() < 1e-12);
+    }
+
+    /**
+     * Tests whether the Hessian times a direction agrees with finite differences of the objective
+     * function.
+     */
+    public void testHessian()
+    {
+        int n = 5;
+        java.util.Random rand = new java.util.Random(6);
+        for(int useMean = 0; useMean < 2; useMean++)
+        {
+            Data data = randomData(n, 10);
+            SSAWorkspace ws = new SSAWorkspace(data, MathFunctions.randRot(n, rand), 2, useMean == 1, null, 1);
+            double V[] = randomAntisymmetric(n, rand);
+            double W[] = randomAntisymmetric(n, rand);
+
+            ws.evaluate(null, true);
+            double HV[] = new double[n*n];
+            ws.hessianTimes(V, HV);
+            double hess = 0.5*MathFunctions.dot(HV, W);
+
+            // mixed second derivative of f(exp(t*V + s*W)*B)
+            double h = 1e-4;
+            double fd = (evaluate(ws, V, W, h, h) - evaluate(ws, V, W, h, -h)
+                         - evaluate(ws, V, W, -h, h) + evaluate(ws, V, W, -h, -h)) / (4*h*h);
+            assertEquals(fd, hess, 1e-4*Math.max(1.0, Math.abs(fd)));
+
+            // the Hessian is symmetric
+            ws.evaluate(null, true);
+            double HW[] = new double[n*n];
+            ws.hessianTimes(W, HW);
+            assertEquals(hess, 0.5*MathFunctions.dot(HW, V), 1e-10*Math.max(1.0, Math.abs(hess)));
+        }
+    }
+
+    /**
+     * Tests whether the loss and the gradient after accepting a trial rotation, which reuse the
+     * factors of the trial, agree with the ones of a new workspace at the accepted point, also if
+     * the trial is one of several speculative steps.
+     */
+    public void testReuseFactors()
+    {
+        int n = 6;
+        int d = 2;
+        java.util.Random rand = new java.util.Random(8);
+        Data data = randomData(n, 10);
+        SSAWorkspace ws = new SSAWorkspace(data, MathFunctions.randRot(n, rand), d, true, null, 1);
+        ws.setSpeculativeSteps(3, null);
+        ws.evaluate(null, true);
+
+        // a trial rotation without the gradient
+        double M[] = randomAntisymmetric(n, rand);
+        for(int l = 0; l < M.length; l++)
+        {
+            M[l] *= 0.1;
+        }
+        double loss = ws.evaluate(M, false);
+        ws.accept();
+        assertGradientAtCurrentPoint(ws, data, d, loss);
+
+        // speculative steps along the negative gradient, of which the second one is accepted
+        double D[] = ws.getGradient().clone();
+        for(int l = 0; l < D.length; l++)
+        {
+            D[l] = -D[l];
+        }
+        ws.setSearchDirection(D);
+        double t[] = { 1.0, 0.4, 0.16 };
+        double losses[] = new double[3];
+        ws.evaluateAlong(t, 3, losses);
+        ws.selectStep(1);
+        ws.accept();
+        assertGradientAtCurrentPoint(ws, data, d, losses[1]);
+    }
+
+    private static void assertGradientAtCurrentPoint(SSAWorkspace ws, Data data, int d, double trialLoss)
+    {
+        double loss = ws.evaluate(null, true);
+        SSAWorkspace fresh = new SSAWorkspace(data, ws.getDemixingMatrix(), d, true, null, 1);
+        double expected = fresh.evaluate(null, true);
+        assertEquals(expected, loss, 1e-12*Math.abs(expected));
+        assertEquals(trialLoss, loss, 1e-12*Math.abs(expected));
+        double grad[] = ws.getGradient();
+        double expectedGrad[] = fresh.getGradient();
+        for(int l = 0; l < grad.length; l++)
+        {
+            assertEquals(expectedGrad[l], grad[l], 1e-10*Math.max(1.0, Math.abs(expectedGrad[l])));
+        }
+    }
+
+    /**
+     * Tests the log-determinants and solves of the batched Cholesky kernel for 200 x 200 matrices
+     * whose determinants overflow (eigenvalues around 1e4), underflow (around 1e-4) or neither
+     * (between 1e-3 and 1e3). The log-determinants are compared with the sums of the logarithms of
+     * the eigenvalues.
+     */
+    public void testCholeskySolveLargeDimension()
+    {
+        int d = 200;
+        int m = 2;
+        double range[][] = { { 3.0, 5.0 }, { -5.0, -3.0 }, { -3.0, 3.0 } }; // log10 of the eigenvalues
+        java.util.Random rand = new java.util.Random(7);
+        double C[][] = new double[range.length][];
+        double B[][] = new double[range.length][];
+        SSAMatrix X[] = new SSAMatrix[range.length];
+        double expected[] = new double[range.length];
+        for(int i = 0; i < range.length; i++)
+        {
+            // C_i = Q*diag(lambda)*Q' with a random rotation Q
+            SSAMatrix Q = MathFunctions.randRot(d, rand);
+            SSAMatrix QL = SSAMatrix.zeros(d, d);
+            for(int j = 0; j < d; j++)
+            {
+                double lambda = Math.pow(10.0, range[i][0] + (range[i][1] - range[i][0])*j/(d - 1));
+                expected[i] += Math.log(lambda);
+                for(int k = 0; k < d; k++)
+                {
+                    QL.set(k, j, Q.get(k, j)*lambda);
+                }
+            }
+            SSAMatrix Ci = QL.mmul(Q.transpose());
+            X[i] = SSAMatrix.rand(d, m, rand);
+            C[i] = toRowMajor(Ci);
+            B[i] = toRowMajor(Ci.mmul(X[i]));
+        }
+        assertTrue(Double.isInfinite(Math.exp(expected[0])));
+        assertEquals(0.0, Math.exp(expected[1]));
+
+        double logdet[] = new double[range.length];
+        MathFunctions.choleskySolve(C, B, 0, range.length, d, m, logdet);
+        for(int i = 0; i < range.length; i++)
+        {
+            assertEquals(expected[i], logdet[i], 1e-9*Math.abs(expected[i]) + 1e-9);
+            for(int k = 0; k < d; k++)
+            {
+                for(int l = 0; l < m; l++)
+                {
+                    assertEquals(X[i].get(k, l), B[i][k*m + l], 1e-6);
+                }
+            }
+        }
+    }
+
+    private static double[] toRowMajor(SSAMatrix M)
+    {
+        double A[] = new double[M.getRows()*M.getColumns()];
+        for(int k = 0; k < M.getRows(); k++)
+        {
+            for(int l = 0; l < M.getColumns(); l++)
+            {
+                A[k*M.getColumns() + l] = M.get(k, l);
+            }
+        }
+        return A;
+    }
+
+    private static double evaluate(SSAWorkspace ws, double V[], double W[], double t, double s)
+    {
+        double M[] = new double[V.length];
+        for(int l = 0; l < M.length; l++)
+        {
+            M[l] = t*V[l] + s*W[l];
+        }
+        return ws.evaluate(M, false);
+    }
+
+    private static double[] randomAntisymmetric(int n, java.util.Random rand)
+    {
+        double D[] = new double[n*n];
+        for(int a = 0; a < n; a++)
+        {
+            for(int b = 0; b < a; b++)
+            {
+                D[a*n + b] = rand.nextGaussian();
+                D[b*n + a] = -D[a*n + b];
+            }
+        }
+        return D;
+    }
+}